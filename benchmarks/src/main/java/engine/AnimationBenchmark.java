@@ -0,0 +1,48 @@
+package engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stepping every animation of a system by one 60 Hz tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnimationBenchmark {
+    @Param({"1000", "100000"})
+    public int animations;
+    private AnimationSystem system;
+    private Animation lastAnimation;
+
+    @Setup
+    public void setup() {
+        system = new AnimationSystem(animations);
+        float[] frames = {16.0f, 128.0f, 24.0f, 128.0f, 32.0f, 128.0f};
+        for (int i = 0; i < animations; i++) {
+            // Different rates so frames do not all change on the same tick.
+            lastAnimation = new Animation(system, frames, 8.0f, 8.0f, 
+                4.0f + i % 8);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        system.update(1.0f / 60.0f);
+        return lastAnimation.getFrame();
+    }
+}
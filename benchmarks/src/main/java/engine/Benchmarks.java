@@ -0,0 +1,36 @@
+package engine;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the engine benchmarks with the same options as JMH's own main, plus 
+ * the GC profiler, so every result comes with its allocation rate and runs 
+ * from different commits can be compared.
+ * 
+ *     java -jar benchmarks/target/benchmarks.jar PhysicsWorld -p bodies=1000
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() 
+            || commandLine.shouldListWithParams() 
+            || commandLine.shouldListProfilers() 
+            || commandLine.shouldListResultFormats()) 
+        {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,43 @@
+package engine;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the projection matrix and getting it ready for glUniform, as 
+ * Renderer does on every flush.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Matrix4fBenchmark {
+    private Matrix4f matrix = new Matrix4f();
+    private float cameraX = 0.0f;
+
+    @Benchmark
+    public float orthographic() {
+        cameraX += 1.0f;
+        matrix.orthographic(cameraX - 600.0f, cameraX + 600.0f, 400.0f, 
+            -400.0f, 0.0f, 10.0f);
+        return matrix.getXPosition();
+    }
+
+    @Benchmark
+    public float toFloatBuffer() {
+        FloatBuffer buffer = matrix.toFloatBuffer();
+        return buffer.get(12);
+    }
+}
@@ -0,0 +1,62 @@
+package engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Noise sampling, one sample at a time and in bulk. Each operation samples 
+ * a 64 by 64 chunk's worth of values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoiseBenchmark {
+    private final int SIZE = 64;
+    private final float STEP = 0.05f;
+    private Noise noise;
+    private float[] out = new float[SIZE * SIZE];
+
+    @Setup
+    public void setup() {
+        noise = new Noise(1234);
+    }
+
+    @Benchmark
+    public float cosineInterpolate() {
+        float sum = 0.0f;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            sum += noise.cosineInterpolate(i * STEP);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float simplexNoise() {
+        float sum = 0.0f;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                sum += noise.simplexNoise(x * STEP, y * STEP);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] fill() {
+        noise.fill(out, 0.0f, 0.0f, STEP, SIZE, SIZE);
+        return out;
+    }
+}
@@ -0,0 +1,78 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vertex generation and sorting through the QuadBuffer Renderer batches
+ * into, depth tracking included, without the OpenGL upload and draw. Each
+ * operation adds 1000 quads and sorts them into draw order like a flush.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QuadBatchBenchmark {
+    private final int QUAD_COUNT = 1000;
+    private QuadBuffer quads;
+    private TextureAtlas textureAtlas;
+    private int region;
+
+    @Setup
+    public void setup() {
+        quads = new QuadBuffer();
+        textureAtlas = new TextureAtlas(256, 256);
+        region = textureAtlas.addRegion(16.0f, 128.0f, 8.0f, 8.0f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        quads.free();
+    }
+
+    @Benchmark
+    public ByteBuffer addQuad() {
+        for (int i = 0; i < QUAD_COUNT; i++) {
+            quads.addQuad(i % 40 * 30.0f, i / 40 * 30.0f, 0.0f, 28.0f,
+                28.0f, 16.0f, 128.0f, 8.0f, 8.0f, 1.0f, 1.0f, 1.0f, 1.0f,
+                textureAtlas);
+        }
+        return quads.sort();
+    }
+
+    @Benchmark
+    public ByteBuffer addRegionQuad() {
+        for (int i = 0; i < QUAD_COUNT; i++) {
+            quads.addQuad(i % 40 * 30.0f, i / 40 * 30.0f, 0.0f, 28.0f,
+                28.0f, region, 1.0f, 1.0f, 1.0f, 1.0f, textureAtlas);
+        }
+        return quads.sort();
+    }
+
+    /**
+     * Quads at depths that go up and wrap around, out of the farthest first
+     * order translucent quads are drawn in, so the flush has to sort them.
+     */
+    @Benchmark
+    public ByteBuffer addUnsortedRegionQuad() {
+        for (int i = 0; i < QUAD_COUNT; i++) {
+            quads.addQuad(i % 40 * 30.0f, i / 40 * 30.0f, i % 10, 28.0f,
+                28.0f, region, 1.0f, 1.0f, 1.0f, 0.5f, textureAtlas);
+        }
+        return quads.sort();
+    }
+}
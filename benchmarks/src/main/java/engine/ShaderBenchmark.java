@@ -0,0 +1,56 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Separating shaders/shader.glsl into stages and adding defines, the part of 
+ * loading a shader that runs before OpenGL is called.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShaderBenchmark {
+    private String source;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream stream = ShaderBenchmark.class.getResourceAsStream(
+            "/shaders/shader.glsl")) 
+        {
+            if (stream == null) {
+                throw new RuntimeException("Shader resource is missing.");
+            }
+            source = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public Shader parse() throws IOException {
+        return new Shader(new BufferedReader(new StringReader(source)));
+    }
+
+    @Benchmark
+    public Shader parseWithDefines() throws IOException {
+        return new Shader(new BufferedReader(new StringReader(source)), 
+            "ALPHA_TEST");
+    }
+}
@@ -24,9 +24,19 @@ layout(location = 0) in vec2 v_textureCoords;
 layout(location = 1) in vec4 v_color;
 
 layout(location = 1) uniform sampler2D u_textureAtlas;
+#ifdef ALPHA_TEST
+layout(location = 2) uniform float u_alphaCutoff;
+#endif
 
 layout(location = 0) out vec4 o_color;
 
 void main() {
     o_color = texture(u_textureAtlas, v_textureCoords) * vec4(v_color.x, v_color.y, v_color.z, v_color.w);
+#ifdef ALPHA_TEST
+    // Only in the alpha tested variant, since discard can turn off early 
+    // depth testing.
+    if (o_color.w < u_alphaCutoff) {
+        discard;
+    }
+#endif
 }
\ No newline at end of file
@@ -0,0 +1,403 @@
+package engine;
+
+import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11C.glBindTexture;
+import static org.lwjgl.opengl.GL11C.glDeleteTextures;
+import static org.lwjgl.opengl.GL11C.glDrawElements;
+import static org.lwjgl.opengl.GL11C.glGenTextures;
+import static org.lwjgl.opengl.GL13C.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13C.GL_TEXTURE1;
+import static org.lwjgl.opengl.GL13C.GL_TEXTURE2;
+import static org.lwjgl.opengl.GL13C.glActiveTexture;
+import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15C.glBindBuffer;
+import static org.lwjgl.opengl.GL15C.glBufferData;
+import static org.lwjgl.opengl.GL15C.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15C.glGenBuffers;
+import static org.lwjgl.opengl.GL15C.nglBufferSubData;
+import static org.lwjgl.opengl.GL20C.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20C.glUniform1f;
+import static org.lwjgl.opengl.GL20C.glUniform1i;
+import static org.lwjgl.opengl.GL20C.glUniformMatrix4fv;
+import static org.lwjgl.opengl.GL20C.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30C.GL_RGBA32F;
+import static org.lwjgl.opengl.GL30C.glBindVertexArray;
+import static org.lwjgl.opengl.GL30C.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30C.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31C.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31C.glTexBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Draws animated sprites whose frames are picked on the GPU.
+ * 
+ * Each sprite stores a clip and a start time. The vertex shader looks up the
+ * clip's frames in buffer textures and picks one from a time uniform, so
+ * sprites are written once and only re-uploaded when changed. Nothing is
+ * updated on the CPU as the animations play.
+ * 
+ * Needs OpenGL 3.1 for buffer textures. Uses shaders/animated.glsl.
+ */
+public final class AnimatedSpriteRenderer implements AutoCloseable {
+    private final int VERTEX_BYTE_SIZE = 4 * 11;
+    private final int SPRITE_BYTE_SIZE = VERTEX_BYTE_SIZE * 4;
+    private int maxSprites;
+    private int spriteCount = 0;
+    // Sprites changed since the last draw, as [first, last).
+    private int dirtyStart;
+    private int dirtyEnd;
+    private ByteBuffer vertices;
+    private int vaoId;
+    private int vertexId;
+    private int indexId;
+    private Shader shader;
+    private Renderer renderer;
+    // x first frame, y frame count, z frames per second, w unused.
+    private FloatBuffer clips = ResourceRegistry.mallocFloat(4 * 16);
+    private int clipCount = 0;
+    // xy top left and zw bottom right texture coordinates.
+    private FloatBuffer frames = ResourceRegistry.mallocFloat(4 * 64);
+    private int frameCount = 0;
+    // Region handle of each frame, so its coordinates can be copied again.
+    private int[] frameRegions = new int[64];
+    private boolean clipsChanged = false;
+    private int clipBufferId;
+    private int clipTextureId;
+    private int frameBufferId;
+    private int frameTextureId;
+
+    /**
+     * Initializes the buffers and the shader.
+     * 
+     * @param renderer renderer whose camera is used
+     * @param maxSprites most sprites held at once
+     * @param shaderPath path to the animated shader file
+     */
+    public AnimatedSpriteRenderer(Renderer renderer, int maxSprites,
+        String shaderPath)
+    {
+        this.renderer = renderer;
+        this.maxSprites = maxSprites;
+        vertices = ResourceRegistry.calloc(maxSprites * SPRITE_BYTE_SIZE);
+
+        shader = new Shader(shaderPath);
+        shader.use();
+        // The locations must be the same as in the shader.
+        glUniform1i(1, 0);
+        glUniform1i(3, 1);
+        glUniform1i(4, 2);
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        vertexId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vertexId);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_DYNAMIC_DRAW);
+
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, VERTEX_BYTE_SIZE, 0);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, VERTEX_BYTE_SIZE, 3 * 4);
+        glEnableVertexAttribArray(2);
+        glVertexAttribPointer(2, 4, GL_FLOAT, false, VERTEX_BYTE_SIZE, 5 * 4);
+        glEnableVertexAttribArray(3);
+        glVertexAttribPointer(3, 2, GL_FLOAT, false, VERTEX_BYTE_SIZE, 9 * 4);
+
+        IntBuffer indicesBuffer = MemoryUtil.memAllocInt(maxSprites * 6);
+        for (int i = 0; i < maxSprites * 4; i += 4) {
+            indicesBuffer.put(i);
+            indicesBuffer.put(i + 1);
+            indicesBuffer.put(i + 2);
+            indicesBuffer.put(i + 2);
+            indicesBuffer.put(i + 3);
+            indicesBuffer.put(i);
+        }
+        indicesBuffer.flip();
+
+        indexId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+        MemoryUtil.memFree(indicesBuffer);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        clipBufferId = glGenBuffers();
+        clipTextureId = glGenTextures();
+        frameBufferId = glGenBuffers();
+        frameTextureId = glGenTextures();
+
+        ResourceRegistry.addGlObjects(ResourceRegistry.VERTEX_ARRAY, 1);
+        ResourceRegistry.addGlObjects(ResourceRegistry.BUFFER, 4);
+        ResourceRegistry.addGlObjects(ResourceRegistry.TEXTURE, 2);
+        ResourceRegistry.register(this, "AnimatedSpriteRenderer");
+    }
+
+    /**
+     * Adds a clip made of atlas regions. The regions' texture coordinates are
+     * copied when the clip is added, so call refreshRegions() after moving
+     * one with TextureAtlas.setRegion().
+     * 
+     * @param textureAtlas atlas the regions are from
+     * @param regions region handles from TextureAtlas.addRegion, in order
+     * @param fps how long a frame should last in fps
+     * @return clip ID to give sprites
+     */
+    public int addClip(TextureAtlas textureAtlas, int[] regions, float fps) {
+        if (frames.remaining() < regions.length * 4) {
+            frames = ResourceRegistry.reallocFloat(frames, Math.max(
+                frames.capacity() * 2, frames.position() + regions.length * 4));
+        }
+        if (!clips.hasRemaining()) {
+            clips = ResourceRegistry.reallocFloat(clips, clips.capacity() * 2);
+        }
+        if (frameCount + regions.length > frameRegions.length) {
+            frameRegions = Arrays.copyOf(frameRegions, Math.max(
+                frameRegions.length * 2, frameCount + regions.length));
+        }
+        float[] regionCoords = textureAtlas.getRegions();
+        for (int i = 0; i < regions.length; i++) {
+            frames.put(regionCoords, regions[i] * 4, 4);
+            frameRegions[frameCount + i] = regions[i];
+        }
+        clips.put(frameCount);
+        clips.put(regions.length);
+        clips.put(fps);
+        clips.put(0.0f);
+        frameCount += regions.length;
+        clipsChanged = true;
+        clipCount++;
+        return clipCount - 1;
+    }
+
+    /**
+     * Copies the texture coordinates of every clip's regions again, so
+     * regions moved since their clips were added are drawn where they are
+     * now. The clips are uploaded on the next draw.
+     * 
+     * @param textureAtlas atlas the clips are from
+     */
+    public void refreshRegions(TextureAtlas textureAtlas) {
+        float[] regionCoords = textureAtlas.getRegions();
+        for (int i = 0; i < frameCount; i++) {
+            int offset = frameRegions[i] * 4;
+            frames.put(i * 4, regionCoords[offset]);
+            frames.put(i * 4 + 1, regionCoords[offset + 1]);
+            frames.put(i * 4 + 2, regionCoords[offset + 2]);
+            frames.put(i * 4 + 3, regionCoords[offset + 3]);
+        }
+        clipsChanged = true;
+    }
+
+    /**
+     * Adds a sprite.
+     * 
+     * @param xPosition x position in pixels
+     * @param yPosition y position in pixels
+     * @param zPosition z position
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param clip clip ID from addClip
+     * @param startTime time the clip starts playing, on the clock passed to
+     *     draw
+     * @param red red amount 0-1
+     * @param green green amount 0-1
+     * @param blue blue amount 0-1
+     * @param alpha opacity 0-1
+     * @return sprite index
+     */
+    public int addSprite(float xPosition, float yPosition, float zPosition,
+        float width, float height, int clip, float startTime, float red,
+        float green, float blue, float alpha)
+    {
+        if (spriteCount == maxSprites) {
+            throw new RuntimeException("Too many sprites.");
+        }
+        spriteCount++;
+        setSprite(spriteCount - 1, xPosition, yPosition, zPosition, width,
+            height, clip, startTime, red, green, blue, alpha);
+        return spriteCount - 1;
+    }
+
+    /**
+     * Changes a sprite. Only changed sprites are uploaded on the next draw.
+     * 
+     * @param sprite sprite index from addSprite
+     * @param xPosition x position in pixels
+     * @param yPosition y position in pixels
+     * @param zPosition z position
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param clip clip ID from addClip
+     * @param startTime time the clip starts playing, on the clock passed to
+     *     draw
+     * @param red red amount 0-1
+     * @param green green amount 0-1
+     * @param blue blue amount 0-1
+     * @param alpha opacity 0-1
+     */
+    public void setSprite(int sprite, float xPosition, float yPosition,
+        float zPosition, float width, float height, int clip, float startTime,
+        float red, float green, float blue, float alpha)
+    {
+        if (sprite < 0 || sprite >= spriteCount) {
+            throw new RuntimeException("Sprite does not exist.");
+        }
+        vertices.position(sprite * SPRITE_BYTE_SIZE);
+        addVertex(xPosition, yPosition, zPosition, 0.0f, 0.0f, red, green,
+            blue, alpha, clip, startTime);
+        addVertex(xPosition + width, yPosition, zPosition, 1.0f, 0.0f, red,
+            green, blue, alpha, clip, startTime);
+        addVertex(xPosition + width, yPosition + height, zPosition, 1.0f,
+            1.0f, red, green, blue, alpha, clip, startTime);
+        addVertex(xPosition, yPosition + height, zPosition, 0.0f, 1.0f, red,
+            green, blue, alpha, clip, startTime);
+
+        if (dirtyStart == dirtyEnd) {
+            dirtyStart = sprite;
+            dirtyEnd = sprite + 1;
+        }
+        else {
+            dirtyStart = Math.min(dirtyStart, sprite);
+            dirtyEnd = Math.max(dirtyEnd, sprite + 1);
+        }
+    }
+
+    private void addVertex(float xPosition, float yPosition, float zPosition,
+        float xCorner, float yCorner, float red, float green, float blue,
+        float alpha, int clip, float startTime)
+    {
+        vertices.putFloat(xPosition);
+        vertices.putFloat(yPosition);
+        vertices.putFloat(zPosition);
+        vertices.putFloat(xCorner);
+        vertices.putFloat(yCorner);
+        vertices.putFloat(red);
+        vertices.putFloat(green);
+        vertices.putFloat(blue);
+        vertices.putFloat(alpha);
+        vertices.putFloat(clip);
+        vertices.putFloat(startTime);
+    }
+
+    /**
+     * Removes all sprites. Clips are kept.
+     */
+    public void clearSprites() {
+        spriteCount = 0;
+        dirtyStart = 0;
+        dirtyEnd = 0;
+    }
+
+    private void uploadTable(int bufferId, int textureId, FloatBuffer table) {
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        table.flip();
+        glBufferData(GL_TEXTURE_BUFFER, table, GL_STATIC_DRAW);
+        table.position(table.limit());
+        table.limit(table.capacity());
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+
+        glBindTexture(GL_TEXTURE_BUFFER, textureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_RGBA32F, bufferId);
+    }
+
+    /**
+     * Draws all sprites. Uploads only the sprites and clips changed since the
+     * last draw.
+     * 
+     * @param time current time in seconds, on the same clock as the sprites'
+     *     start times. AnimationSystem.getTime() works.
+     * @param textureAtlas atlas the clips are from
+     */
+    public void draw(float time, TextureAtlas textureAtlas) {
+        if (spriteCount == 0 || clipCount == 0) {
+            return;
+        }
+        shader.use();
+        glBindVertexArray(vaoId);
+        glUniformMatrix4fv(0, false, renderer.getMatrix().toFloatBuffer());
+        glUniform1f(2, time);
+
+        if (clipsChanged) {
+            glActiveTexture(GL_TEXTURE1);
+            uploadTable(clipBufferId, clipTextureId, clips);
+            glActiveTexture(GL_TEXTURE2);
+            uploadTable(frameBufferId, frameTextureId, frames);
+            clipsChanged = false;
+        }
+        else {
+            glActiveTexture(GL_TEXTURE1);
+            glBindTexture(GL_TEXTURE_BUFFER, clipTextureId);
+            glActiveTexture(GL_TEXTURE2);
+            glBindTexture(GL_TEXTURE_BUFFER, frameTextureId);
+        }
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, textureAtlas.getId());
+
+        glBindBuffer(GL_ARRAY_BUFFER, vertexId);
+        if (dirtyStart != dirtyEnd) {
+            // Uploads straight from the address, so no buffer view is made.
+            long offset = (long)dirtyStart * SPRITE_BYTE_SIZE;
+            nglBufferSubData(GL_ARRAY_BUFFER, offset, 
+                (long)(dirtyEnd - dirtyStart) * SPRITE_BYTE_SIZE, 
+                MemoryUtil.memAddress0(vertices) + offset);
+            dirtyStart = 0;
+            dirtyEnd = 0;
+        }
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexId);
+
+        glDrawElements(GL_TRIANGLES, spriteCount * 6, GL_UNSIGNED_INT, 0);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Cleans up memory. Does nothing if already cleaned up.
+     */
+    public void freeBufferMemory() {
+        if (vertices == null) {
+            return;
+        }
+        ResourceRegistry.free(vertices);
+        ResourceRegistry.free(clips);
+        ResourceRegistry.free(frames);
+        vertices = null;
+    }
+
+    /**
+     * Cleans up memory and deletes the OpenGL objects and the shader. Does 
+     * nothing if already closed.
+     */
+    @Override
+    public void close() {
+        freeBufferMemory();
+        if (vaoId == 0) {
+            return;
+        }
+        glDeleteBuffers(new int[] {vertexId, indexId, clipBufferId, 
+            frameBufferId});
+        glDeleteTextures(new int[] {clipTextureId, frameTextureId});
+        glDeleteVertexArrays(vaoId);
+        vaoId = 0;
+        shader.close();
+        ResourceRegistry.removeGlObjects(ResourceRegistry.VERTEX_ARRAY, 1);
+        ResourceRegistry.removeGlObjects(ResourceRegistry.BUFFER, 4);
+        ResourceRegistry.removeGlObjects(ResourceRegistry.TEXTURE, 2);
+        ResourceRegistry.unregister(this);
+    }
+}
@@ -1,42 +1,66 @@
 package engine;
 
-import java.time.Instant;
-
 /**
- * Holds/updates the state of an animation and draws it.
+ * Holds the frames of an animation and draws it. Frame timing is kept and 
+ * advanced by an AnimationSystem.
  */
 public final class Animation {
     private float[] frameXYPositions;
     private float frameWidth;
     private float frameHeight;
-    private int currentFrame;
-    private float fps;
-    private long lastEpoch = 0;
-    private boolean pause = false;
+    // Atlas regions of the frames, added by setAtlas().
+    private int[] frameRegions;
+    private TextureAtlas regionAtlas;
+    private boolean flipped = false;
+    private AnimationSystem system;
+    // Index of the frame state in the system.
+    private int index;
 
     /**
-     * Initializes the animation.
+     * Initializes the animation and adds it to a system.
      * 
+     * @param system system that advances the frames
      * @param frameXYPositions the texture position in pixels. The array looks 
      *     like [x1, y1, x2, y2, etc.].
      * @param frameWidth texture width for all frames in pixels
      * @param frameHeight texture height for all frames in pixels
      * @param fps how long a frame should last in fps
      */
-    public Animation(float[] frameXYPositions, float frameWidth, 
-        float frameHeight, float fps) 
+    public Animation(AnimationSystem system, float[] frameXYPositions, 
+        float frameWidth, float frameHeight, float fps) 
     {  
         this.frameXYPositions = frameXYPositions;
         this.frameWidth = frameWidth;
         this.frameHeight = frameHeight;
-        this.fps = fps;
+        frameRegions = new int[frameXYPositions.length / 2];
+        this.system = system;
+        index = system.add(this, frameXYPositions.length / 2, fps);
     }
 
     /**
-     * Changes the frame if enough time has passed and adds a frame to the 
-     * batch.
+     * Adds the frames to an atlas as regions, so drawing never works out 
+     * texture coordinates. Call once before drawing, and again only if the 
+     * frames move to another atlas, since every new atlas gets regions 
+     * added.
      * 
-     * @param renderer renderer to add to
+     * @param textureAtlas atlas the frames are in
+     */
+    public void setAtlas(TextureAtlas textureAtlas) {
+        if (textureAtlas == regionAtlas) {
+            return;
+        }
+        regionAtlas = textureAtlas;
+        for (int i = 0; i < frameRegions.length; i++) {
+            frameRegions[i] = textureAtlas.addRegion(frameXYPositions[i * 2], 
+                frameXYPositions[i * 2 + 1], frameWidth, frameHeight);
+        }
+    }
+
+    /**
+     * Adds the current frame to the batch. Call AnimationSystem.update() 
+     * once per frame to advance it.
+     * 
+     * @param renderer renderer or other batch to add to
      * @param xPosition x position in pixels
      * @param yPosition y position in pixels
      * @param width width in pixels
@@ -45,38 +69,53 @@ public final class Animation {
      * @param green green amount 0-1
      * @param blue blue amount 0-1
      * @param alpha opacity 0-1
+     * @param textureAtlas atlas given to setAtlas()
      */
-    public void drawFrame(Renderer renderer, float xPosition, float yPosition, 
+    public void drawFrame(QuadBatch renderer, float xPosition, float yPosition, 
         float zPosition, float width, float height, float red, float green, 
         float blue, float alpha, TextureAtlas textureAtlas) 
     {   
-        if (!pause) {
-            long epoch = Instant.now().toEpochMilli();
-            if (epoch - lastEpoch > 1000 / fps) {
-                lastEpoch = epoch;
-                currentFrame += 2;
-                if (currentFrame == frameXYPositions.length) {
-                    currentFrame = 0;
-                }
-            }
+        drawFrame(renderer, system.getFrame(index), xPosition, yPosition, 
+            zPosition, width, height, red, green, blue, alpha, textureAtlas);
+    }
+
+    /**
+     * Adds a given frame to the batch, such as one copied into a snapshot by 
+     * a simulation thread.
+     * 
+     * @param frame frame number, not the frame x index
+     */
+    public void drawFrame(QuadBatch renderer, int frame, float xPosition, 
+        float yPosition, float zPosition, float width, float height, 
+        float red, float green, float blue, float alpha, 
+        TextureAtlas textureAtlas) 
+    {
+        if (textureAtlas != regionAtlas) {
+            throw new RuntimeException("Animation frames are not in the "
+                + "atlas. Call setAtlas() first.");
         }
+        int region = frameRegions[frame];
         renderer.addQuad(xPosition, yPosition, zPosition, width, height, 
-            frameXYPositions[currentFrame], frameXYPositions[currentFrame + 1], 
-            frameWidth, frameHeight, red, green, blue, alpha, textureAtlas);
+            flipped ? textureAtlas.getFlippedRegion(region) : region, red, 
+            green, blue, alpha, textureAtlas);
     }
 
     /**
      * Flips all the frames horizontally.
      */
     public void flipHorizontally() {
-        for (int i = 0; i < frameXYPositions.length; i += 2) {
-            frameXYPositions[i] = frameXYPositions[i] + frameWidth;
-        }
-        frameWidth = -frameWidth;
+        flipped = !flipped;
     }
 
     public int getCurrentFrame() {
-        return currentFrame;
+        return system.getFrame(index) * 2;
+    }
+
+    /**
+     * Returns the frame number.
+     */
+    public int getFrame() {
+        return system.getFrame(index);
     }
 
     /**
@@ -85,22 +124,38 @@ public final class Animation {
      * @param frame frame number, not the frame x index
      */
     public void setFrame(int frame) {
-        currentFrame = frame * 2;
+        system.setFrame(index, frame);
     }
 
     /**
      * Pause frame updating.
      */
     public void setPause(boolean pause) {
-        this.pause = pause;
+        system.setPause(index, pause);
     }
 
     public void setFps(float fps) {
-        this.fps = fps;
+        system.setFps(index, fps);
     }
 
     public void setFramePositions(int frame, float xPosition, float yPosition) {
         frameXYPositions[frame] = xPosition;
         frameXYPositions[frame + 1] = yPosition;
+        if (regionAtlas != null) {
+            regionAtlas.setRegion(frameRegions[frame / 2], xPosition, 
+                yPosition, frameWidth, frameHeight);
+        }
+    }
+
+    AnimationSystem getSystem() {
+        return system;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
     }
 }
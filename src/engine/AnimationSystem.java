@@ -0,0 +1,161 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Advances every animation added to it at once. Frame state is kept in 
+ * arrays instead of in each Animation, and the clock is read once per update
+ * instead of once per drawn animation.
+ */
+public final class AnimationSystem {
+    private Animation[] animations;
+    private int count = 0;
+    private int[] frames;
+    private int[] frameCounts;
+    private float[] fps;
+    private float[] frameDurations;
+    // Seconds spent on the current frame.
+    private float[] elapsed;
+    private boolean[] paused;
+    private long lastEpoch = 0;
+    // Seconds advanced in total.
+    private double time = 0.0;
+
+    /**
+     * Initializes an empty system.
+     * 
+     * @param capacity how many animations to make room for. The system grows 
+     *     past this if needed.
+     */
+    public AnimationSystem(int capacity) {
+        capacity = Math.max(capacity, 1);
+        animations = new Animation[capacity];
+        frames = new int[capacity];
+        frameCounts = new int[capacity];
+        fps = new float[capacity];
+        frameDurations = new float[capacity];
+        elapsed = new float[capacity];
+        paused = new boolean[capacity];
+    }
+
+    /**
+     * Adds an animation.
+     * 
+     * @return index of its state
+     */
+    int add(Animation animation, int frameCount, float fps) {
+        if (frameCount <= 0) {
+            throw new RuntimeException("Animation has no frames.");
+        }
+        if (count == animations.length) {
+            int capacity = count * 2;
+            animations = Arrays.copyOf(animations, capacity);
+            frames = Arrays.copyOf(frames, capacity);
+            frameCounts = Arrays.copyOf(frameCounts, capacity);
+            this.fps = Arrays.copyOf(this.fps, capacity);
+            frameDurations = Arrays.copyOf(frameDurations, capacity);
+            elapsed = Arrays.copyOf(elapsed, capacity);
+            paused = Arrays.copyOf(paused, capacity);
+        }
+        animations[count] = animation;
+        frames[count] = 0;
+        frameCounts[count] = frameCount;
+        elapsed[count] = 0.0f;
+        paused[count] = false;
+        count++;
+        setFps(count - 1, fps);
+        return count - 1;
+    }
+
+    /**
+     * Stops updating an animation. It can not be drawn afterwards.
+     * 
+     * @param animation animation added to this system
+     */
+    public void remove(Animation animation) {
+        int index = animation.getIndex();
+        if (animation.getSystem() != this || index < 0) {
+            throw new RuntimeException("Animation is not in this system.");
+        }
+        // Fills the hole with the last animation to keep the arrays packed.
+        int last = count - 1;
+        animations[index] = animations[last];
+        frames[index] = frames[last];
+        frameCounts[index] = frameCounts[last];
+        fps[index] = fps[last];
+        frameDurations[index] = frameDurations[last];
+        elapsed[index] = elapsed[last];
+        paused[index] = paused[last];
+        animations[index].setIndex(index);
+        animations[last] = null;
+        count--;
+        animation.setIndex(-1);
+    }
+
+    /**
+     * Advances all animations by the time since the last update. The first 
+     * update only starts the clock.
+     */
+    public void update() {
+        long epoch = System.nanoTime();
+        float deltaTime = lastEpoch == 0 ? 0.0f 
+            : (epoch - lastEpoch) / 1000000000.0f;
+        lastEpoch = epoch;
+        update(deltaTime);
+    }
+
+    /**
+     * Advances all animations. Skips as many frames as fit in the time, so 
+     * animations keep their speed through slow frames.
+     * 
+     * @param deltaTime time to advance in seconds
+     */
+    public void update(float deltaTime) {
+        time += deltaTime;
+        for (int i = 0; i < count; i++) {
+            if (paused[i]) {
+                continue;
+            }
+            float remaining = elapsed[i] + deltaTime;
+            int steps = (int)(remaining * fps[i]);
+            if (steps > 0) {
+                frames[i] = (frames[i] + steps) % frameCounts[i];
+                remaining -= steps * frameDurations[i];
+            }
+            elapsed[i] = remaining;
+        }
+    }
+
+    int getFrame(int index) {
+        return frames[index];
+    }
+
+    void setFrame(int index, int frame) {
+        frames[index] = frame;
+        elapsed[index] = 0.0f;
+    }
+
+    void setFps(int index, float fps) {
+        this.fps[index] = fps;
+        frameDurations[index] = fps == 0.0f ? 0.0f : 1.0f / fps;
+    }
+
+    void setPause(int index, boolean pause) {
+        paused[index] = pause;
+    }
+
+    /**
+     * Returns the seconds advanced since the system was made. Can be used as 
+     * the clock of an AnimatedSpriteRenderer.
+     */
+    public float getTime() {
+        return (float)time;
+    }
+
+    /**
+     * Returns the number of animations in the system.
+     */
+    public int getCount() {
+        return count;
+    }
+}
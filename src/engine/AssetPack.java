@@ -0,0 +1,159 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Reads a pack of assets built by AssetPacker. The whole pack is memory 
+ * mapped once, and each asset is handed out as a slice of the mapping 
+ * without being copied.
+ * 
+ * A pack starts with a header and an index of every asset's name, type, size 
+ * and position, followed by the assets, each aligned to 64 bytes. Images can 
+ * be stored decoded to RGBA, so they go straight to OpenGL.
+ */
+public final class AssetPack {
+    static final int MAGIC = 0x50534142;
+    static final int VERSION = 1;
+    // Magic, version, entry count and a reserved int.
+    static final int HEADER_SIZE = 4 * 4;
+    static final int ALIGNMENT = 64;
+    /** Stored as is, like a shader or an encoded image. */
+    public static final int RAW = 0;
+    /** Decoded image, 4 bytes per pixel. */
+    public static final int RGBA = 1;
+    private MappedByteBuffer buffer;
+    private HashMap<String, Integer> indices = new HashMap<>();
+    private int[] types;
+    private int[] widths;
+    private int[] heights;
+    private int[] offsets;
+    private int[] sizes;
+
+    /**
+     * Opens a pack.
+     * 
+     * @param path pack file
+     */
+    public AssetPack(Path path) {
+        if (Files.notExists(path)) {
+            throw new RuntimeException("Path does not exist.");
+        }
+        try (FileChannel channel = FileChannel.open(path, 
+            StandardOpenOption.READ)) 
+        {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("Asset pack is too large.");
+            }
+            // Stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+                channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open asset pack.", e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new RuntimeException("File is not an asset pack.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new RuntimeException("Asset pack version is not supported.");
+        }
+        int count = buffer.getInt(8);
+        types = new int[count];
+        widths = new int[count];
+        heights = new int[count];
+        offsets = new int[count];
+        sizes = new int[count];
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            indices.put(new String(name, StandardCharsets.UTF_8), i);
+            types[i] = buffer.get();
+            widths[i] = buffer.getInt();
+            heights[i] = buffer.getInt();
+            offsets[i] = (int)buffer.getLong();
+            sizes[i] = (int)buffer.getLong();
+            if (offsets[i] < 0 || sizes[i] < 0 
+                || (long)offsets[i] + sizes[i] > buffer.limit()) 
+            {
+                throw new RuntimeException("Asset pack is corrupt.");
+            }
+            // Decoded pixels are handed to OpenGL as they are, so they must 
+            // be exactly as many as the size says.
+            if (types[i] == RGBA && (widths[i] < 0 || heights[i] < 0 
+                || (long)widths[i] * heights[i] * 4 != sizes[i])) 
+            {
+                throw new RuntimeException("Asset pack is corrupt.");
+            }
+        }
+    }
+
+    private int index(String name) {
+        Integer index = indices.get(name);
+        if (index == null) {
+            throw new RuntimeException("Asset " + name + " is not in the pack.");
+        }
+        return index;
+    }
+
+    /**
+     * Returns wether the pack has an asset.
+     * 
+     * @param name path the asset was packed from, like res/atlas.png
+     */
+    public boolean contains(String name) {
+        return indices.containsKey(name);
+    }
+
+    /**
+     * Returns an asset's bytes. The buffer is a read only view of the mapped 
+     * file, so it is not copied and must not be freed.
+     * 
+     * @param name path the asset was packed from, like res/atlas.png
+     */
+    public ByteBuffer get(String name) {
+        int index = index(name);
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offsets[index]);
+        slice.limit(offsets[index] + sizes[index]);
+        return slice.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns RAW or RGBA.
+     */
+    public int getType(String name) {
+        return types[index(name)];
+    }
+
+    /**
+     * Returns the width in pixels of an RGBA image, or 0 for other assets.
+     */
+    public int getWidth(String name) {
+        return widths[index(name)];
+    }
+
+    /**
+     * Returns the height in pixels of an RGBA image, or 0 for other assets.
+     */
+    public int getHeight(String name) {
+        return heights[index(name)];
+    }
+
+    /**
+     * Returns the names of all the assets.
+     */
+    public Set<String> getNames() {
+        return indices.keySet();
+    }
+}
@@ -0,0 +1,186 @@
+package engine;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Builds an asset pack for AssetPack from files and directories. Assets are 
+ * named by their path relative to the working directory, with / between 
+ * directories, so ./res/atlas.png becomes res/atlas.png.
+ * 
+ * Run from the game's directory:
+ * 
+ *     java engine.AssetPacker assets.pack res shaders
+ */
+public final class AssetPacker {
+    private boolean decodeImages = true;
+    private List<Path> files = new ArrayList<>();
+
+    /**
+     * Sets wether PNG images are stored decoded to RGBA. Decoded images load 
+     * without any work but take more space. On by default.
+     */
+    public void setDecodeImages(boolean decodeImages) {
+        this.decodeImages = decodeImages;
+    }
+
+    /**
+     * Adds a file, or every file under a directory.
+     */
+    public void add(Path path) {
+        if (Files.notExists(path)) {
+            throw new RuntimeException("Path does not exist.");
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            files.addAll(paths.filter(Files::isRegularFile).sorted()
+                .collect(Collectors.toList()));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list " + path + ".", e);
+        }
+    }
+
+    private String name(Path file) {
+        return Paths.get("").toAbsolutePath().relativize(
+            file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private long align(long offset) {
+        return (offset + AssetPack.ALIGNMENT - 1) & -AssetPack.ALIGNMENT;
+    }
+
+    /**
+     * Writes the pack.
+     * 
+     * @param output pack file, replaced if it exists
+     */
+    public void write(Path output) {
+        int count = files.size();
+        byte[][] names = new byte[count][];
+        int indexSize = 0;
+        for (int i = 0; i < count; i++) {
+            names[i] = name(files.get(i)).getBytes(StandardCharsets.UTF_8);
+            indexSize += 2 + names[i].length + 1 + 4 + 4 + 8 + 8;
+        }
+
+        // Loads every asset first, since the index needs their sizes.
+        ByteBuffer[] datas = new ByteBuffer[count];
+        int[] types = new int[count];
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        boolean[] decoded = new boolean[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                Path file = files.get(i);
+                if (decodeImages && file.toString().endsWith(".png")) {
+                    try (MemoryStack stack = stackPush()) {
+                        IntBuffer width = stack.mallocInt(1);
+                        IntBuffer height = stack.mallocInt(1);
+                        IntBuffer channels = stack.mallocInt(1);
+                        datas[i] = STBImage.stbi_load(file.toString(), width, 
+                            height, channels, 4);
+                        if (datas[i] == null) {
+                            throw new RuntimeException(
+                                STBImage.stbi_failure_reason());
+                        }
+                        decoded[i] = true;
+                        types[i] = AssetPack.RGBA;
+                        widths[i] = width.get(0);
+                        heights[i] = height.get(0);
+                    }
+                }
+                else {
+                    datas[i] = ByteBuffer.wrap(Files.readAllBytes(file));
+                    types[i] = AssetPack.RAW;
+                }
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(AssetPack.HEADER_SIZE 
+                + indexSize).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(AssetPack.MAGIC);
+            index.putInt(AssetPack.VERSION);
+            index.putInt(count);
+            index.putInt(0);
+            long offset = align(index.capacity());
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = offset;
+                index.putShort((short)names[i].length);
+                index.put(names[i]);
+                index.put((byte)types[i]);
+                index.putInt(widths[i]);
+                index.putInt(heights[i]);
+                index.putLong(offset);
+                index.putLong(datas[i].remaining());
+                offset = align(offset + datas[i].remaining());
+            }
+            index.flip();
+
+            try (FileChannel channel = FileChannel.open(output, 
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+                StandardOpenOption.TRUNCATE_EXISTING)) 
+            {
+                while (index.hasRemaining()) {
+                    channel.write(index);
+                }
+                for (int i = 0; i < count; i++) {
+                    channel.position(offsets[i]);
+                    // Written from a copy, since the decoded image must be 
+                    // freed at its original position.
+                    ByteBuffer data = datas[i].duplicate();
+                    while (data.hasRemaining()) {
+                        channel.write(data);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write asset pack.", e);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                if (decoded[i]) {
+                    STBImage.stbi_image_free(datas[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs files and directories. Takes the pack path followed by what to 
+     * put in it. Pass --raw first to keep images encoded.
+     */
+    public static void main(String[] args) {
+        AssetPacker packer = new AssetPacker();
+        int first = 0;
+        if (args.length > 0 && args[0].equals("--raw")) {
+            packer.setDecodeImages(false);
+            first = 1;
+        }
+        if (args.length - first < 2) {
+            System.out.println("Usage: AssetPacker [--raw] <pack> <file or "
+                + "directory>...");
+            return;
+        }
+        for (int i = first + 1; i < args.length; i++) {
+            packer.add(Paths.get(args[i]));
+        }
+        packer.write(Paths.get(args[first]));
+        System.out.println("Packed " + packer.files.size() + " assets into " 
+            + args[first] + ".");
+    }
+}
@@ -0,0 +1,398 @@
+package engine;
+
+import static org.lwjgl.openal.AL10.AL_BUFFER;
+import static org.lwjgl.openal.AL10.AL_BUFFERS_PROCESSED;
+import static org.lwjgl.openal.AL10.AL_BUFFERS_QUEUED;
+import static org.lwjgl.openal.AL10.AL_FALSE;
+import static org.lwjgl.openal.AL10.AL_FORMAT_MONO16;
+import static org.lwjgl.openal.AL10.AL_FORMAT_STEREO16;
+import static org.lwjgl.openal.AL10.AL_GAIN;
+import static org.lwjgl.openal.AL10.AL_LOOPING;
+import static org.lwjgl.openal.AL10.AL_PITCH;
+import static org.lwjgl.openal.AL10.AL_PLAYING;
+import static org.lwjgl.openal.AL10.AL_SOURCE_STATE;
+import static org.lwjgl.openal.AL10.AL_TRUE;
+import static org.lwjgl.openal.AL10.alBufferData;
+import static org.lwjgl.openal.AL10.alDeleteBuffers;
+import static org.lwjgl.openal.AL10.alDeleteSources;
+import static org.lwjgl.openal.AL10.alGenBuffers;
+import static org.lwjgl.openal.AL10.alGenSources;
+import static org.lwjgl.openal.AL10.alGetSourcei;
+import static org.lwjgl.openal.AL10.alSourcePlay;
+import static org.lwjgl.openal.AL10.alSourceQueueBuffers;
+import static org.lwjgl.openal.AL10.alSourceStop;
+import static org.lwjgl.openal.AL10.alSourceUnqueueBuffers;
+import static org.lwjgl.openal.AL10.alSourcef;
+import static org.lwjgl.openal.AL10.alSourcei;
+import static org.lwjgl.openal.ALC10.alcCloseDevice;
+import static org.lwjgl.openal.ALC10.alcCreateContext;
+import static org.lwjgl.openal.ALC10.alcDestroyContext;
+import static org.lwjgl.openal.ALC10.alcMakeContextCurrent;
+import static org.lwjgl.openal.ALC10.alcOpenDevice;
+import static org.lwjgl.openal.ALC11.ALC_ALL_DEVICES_SPECIFIER;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_close;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_decode_filename;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_get_info;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_get_samples_short_interleaved;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_open_filename;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_seek_start;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.openal.ALCCapabilities;
+import org.lwjgl.openal.ALUtil;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.libc.LibCStdlib;
+
+/**
+ * Plays sound effects and music with OpenAL.
+ * 
+ * Effects are decoded once into OpenAL buffers and played on a fixed pool of 
+ * sources, so playing one never allocates. Music is decoded a little at a 
+ * time on a background thread into a few queued buffers, so a long track 
+ * never sits decoded in memory.
+ * 
+ * Machines with no sound device can run with the environment variable 
+ * ALSOFT_DRIVERS=null, which makes OpenAL Soft's "No Output" device the 
+ * default. ALSOFT_DRIVERS=wave writes to the file set under [wave] in 
+ * alsoft.ini instead.
+ */
+public final class AudioMixer implements AutoCloseable {
+    private final int MUSIC_BUFFER_COUNT = 3;
+    // Sample frames per music buffer, about 0.19 seconds at 44100 Hz.
+    private final int MUSIC_BUFFER_FRAMES = 8192;
+    private final long MUSIC_POLL_MILLIS = 10;
+    // Stands in for a track to mean stop the music.
+    private final String STOP = new String("stop");
+    private long device;
+    private long context;
+    private int[] sources;
+    // Next source to try, so the oldest sound is cut off when all are busy.
+    private int nextSource = 0;
+    private int[] sounds = new int[16];
+    private int soundCount = 0;
+    private int musicSource;
+    private int[] musicBuffers = new int[MUSIC_BUFFER_COUNT];
+    private ShortBuffer musicSamples;
+    // Owned by the music thread.
+    private long musicDecoder = 0;
+    private int musicChannels;
+    private int musicSampleRate;
+    private volatile boolean musicLooping;
+    // Sample frames decoded since the mixer was made. Written by the music
+    // thread only.
+    private volatile long musicFramesDecoded = 0;
+    private AtomicReference<String> musicRequest = new AtomicReference<>();
+    private volatile boolean running = true;
+    private Thread musicThread;
+
+    /**
+     * Opens a device and starts the music thread.
+     * 
+     * @param deviceName device from getDeviceNames(), or null for the default
+     * @param sourceCount most effects that can play at once
+     */
+    public AudioMixer(String deviceName, int sourceCount) {
+        device = alcOpenDevice(deviceName);
+        if (device == 0) {
+            throw new RuntimeException("Unable to open audio device.");
+        }
+        ALCCapabilities deviceCapabilities = ALC.createCapabilities(device);
+        context = alcCreateContext(device, (IntBuffer)null);
+        if (context == 0 || !alcMakeContextCurrent(context)) {
+            alcCloseDevice(device);
+            throw new RuntimeException("Unable to create audio context.");
+        }
+        AL.createCapabilities(deviceCapabilities);
+
+        sources = new int[sourceCount];
+        alGenSources(sources);
+        musicSource = alGenSources();
+        alGenBuffers(musicBuffers);
+        musicSamples = MemoryUtil.memAllocShort(MUSIC_BUFFER_FRAMES * 2);
+
+        musicThread = new Thread(this::streamMusic, "BAS-E music");
+        musicThread.setDaemon(true);
+        musicThread.start();
+        ResourceRegistry.register(this, "AudioMixer");
+    }
+
+    /**
+     * Returns the names of the devices that can be opened.
+     */
+    public static List<String> getDeviceNames() {
+        List<String> names = ALUtil.getStringList(0, 
+            ALC_ALL_DEVICES_SPECIFIER);
+        return names == null ? Arrays.asList() : names;
+    }
+
+    private int format(int channels) {
+        return channels == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16;
+    }
+
+    private int addSound(int buffer) {
+        if (soundCount == sounds.length) {
+            sounds = Arrays.copyOf(sounds, soundCount * 2);
+        }
+        sounds[soundCount] = buffer;
+        return soundCount++;
+    }
+
+    /**
+     * Decodes an Ogg Vorbis file into an OpenAL buffer. The decoded samples 
+     * are freed once they are in the buffer.
+     * 
+     * @param path source .ogg path
+     * @return sound handle to pass to play
+     */
+    public int loadSound(String path) {
+        if (Files.notExists(Paths.get(path))) {
+            throw new RuntimeException("Path does not exist.");
+        }
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer channels = stack.mallocInt(1);
+            IntBuffer sampleRate = stack.mallocInt(1);
+            ShortBuffer samples = stb_vorbis_decode_filename(path, channels, 
+                sampleRate);
+            if (samples == null) {
+                throw new RuntimeException("Could not decode " + path + ".");
+            }
+            int buffer = alGenBuffers();
+            alBufferData(buffer, format(channels.get(0)), samples, 
+                sampleRate.get(0));
+            LibCStdlib.free(samples);
+            return addSound(buffer);
+        }
+    }
+
+    /**
+     * Copies 16 bit samples into an OpenAL buffer, such as generated ones.
+     * 
+     * @param samples interleaved samples
+     * @param channels 1 for mono or 2 for stereo
+     * @param sampleRate samples per second per channel
+     * @return sound handle to pass to play
+     */
+    public int loadSound(ShortBuffer samples, int channels, int sampleRate) {
+        int buffer = alGenBuffers();
+        alBufferData(buffer, format(channels), samples, sampleRate);
+        return addSound(buffer);
+    }
+
+    /**
+     * Plays a sound on a free source. If every source is busy, the one 
+     * started longest ago is cut off.
+     * 
+     * @param sound handle from loadSound
+     * @param volume gain, 1 for unchanged
+     * @param pitch 1 for unchanged, 2 for an octave up
+     * @param loop wether to repeat until stopped
+     * @return voice handle to pass to stop
+     */
+    public int play(int sound, float volume, float pitch, boolean loop) {
+        int voice = nextSource;
+        for (int i = 0; i < sources.length; i++) {
+            int candidate = (nextSource + i) % sources.length;
+            if (alGetSourcei(sources[candidate], AL_SOURCE_STATE) 
+                != AL_PLAYING) 
+            {
+                voice = candidate;
+                break;
+            }
+        }
+        nextSource = (voice + 1) % sources.length;
+        int source = sources[voice];
+        alSourceStop(source);
+        alSourcei(source, AL_BUFFER, sounds[sound]);
+        alSourcef(source, AL_GAIN, volume);
+        alSourcef(source, AL_PITCH, pitch);
+        alSourcei(source, AL_LOOPING, loop ? AL_TRUE : AL_FALSE);
+        alSourcePlay(source);
+        return voice;
+    }
+
+    /**
+     * Stops a voice. Does nothing if it already ended.
+     */
+    public void stop(int voice) {
+        alSourceStop(sources[voice]);
+    }
+
+    /**
+     * Returns wether a voice is still playing.
+     */
+    public boolean isPlaying(int voice) {
+        return alGetSourcei(sources[voice], AL_SOURCE_STATE) == AL_PLAYING;
+    }
+
+    /**
+     * Starts streaming an Ogg Vorbis track, replacing the current one.
+     * 
+     * @param path source .ogg path
+     * @param loop wether to start over at the end
+     */
+    public void playMusic(String path, boolean loop) {
+        if (Files.notExists(Paths.get(path))) {
+            throw new RuntimeException("Path does not exist.");
+        }
+        musicLooping = loop;
+        musicRequest.set(path);
+    }
+
+    public void stopMusic() {
+        musicRequest.set(STOP);
+    }
+
+    public void setMusicVolume(float volume) {
+        alSourcef(musicSource, AL_GAIN, volume);
+    }
+
+    /**
+     * Decodes the next samples of the track into a buffer.
+     * 
+     * @return false if the track ended
+     */
+    private boolean fillMusicBuffer(int buffer) {
+        musicSamples.clear();
+        int frames = stb_vorbis_get_samples_short_interleaved(musicDecoder, 
+            musicChannels, musicSamples);
+        if (frames == 0 && musicLooping) {
+            stb_vorbis_seek_start(musicDecoder);
+            frames = stb_vorbis_get_samples_short_interleaved(musicDecoder, 
+                musicChannels, musicSamples);
+        }
+        if (frames == 0) {
+            return false;
+        }
+        musicSamples.limit(frames * musicChannels);
+        musicFramesDecoded += frames;
+        alBufferData(buffer, format(musicChannels), musicSamples, 
+            musicSampleRate);
+        return true;
+    }
+
+    private void closeMusic() {
+        alSourceStop(musicSource);
+        // Stopping marks every queued buffer processed.
+        int queued = alGetSourcei(musicSource, AL_BUFFERS_QUEUED);
+        for (int i = 0; i < queued; i++) {
+            alSourceUnqueueBuffers(musicSource);
+        }
+        if (musicDecoder != 0) {
+            stb_vorbis_close(musicDecoder);
+            musicDecoder = 0;
+        }
+    }
+
+    private void openMusic(String path) {
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            musicDecoder = stb_vorbis_open_filename(path, error, null);
+            if (musicDecoder == 0) {
+                System.err.println("Could not decode " + path + ".");
+                return;
+            }
+            STBVorbisInfo info = STBVorbisInfo.malloc(stack);
+            stb_vorbis_get_info(musicDecoder, info);
+            musicChannels = Math.min(info.channels(), 2);
+            musicSampleRate = info.sample_rate();
+        }
+        for (int buffer : musicBuffers) {
+            if (fillMusicBuffer(buffer)) {
+                alSourceQueueBuffers(musicSource, buffer);
+            }
+        }
+        alSourcePlay(musicSource);
+    }
+
+    /**
+     * Runs on the music thread, refilling buffers as they finish playing.
+     */
+    private void streamMusic() {
+        while (running) {
+            String request = musicRequest.getAndSet(null);
+            if (request != null) {
+                closeMusic();
+                if (request != STOP) {
+                    openMusic(request);
+                }
+            }
+            if (musicDecoder != 0) {
+                int processed = alGetSourcei(musicSource, 
+                    AL_BUFFERS_PROCESSED);
+                for (int i = 0; i < processed; i++) {
+                    int buffer = alSourceUnqueueBuffers(musicSource);
+                    if (fillMusicBuffer(buffer)) {
+                        alSourceQueueBuffers(musicSource, buffer);
+                    }
+                }
+                int queued = alGetSourcei(musicSource, AL_BUFFERS_QUEUED);
+                if (queued == 0) {
+                    closeMusic();
+                }
+                else if (alGetSourcei(musicSource, AL_SOURCE_STATE) 
+                    != AL_PLAYING) 
+                {
+                    // Ran dry before being refilled.
+                    alSourcePlay(musicSource);
+                }
+            }
+            try {
+                Thread.sleep(MUSIC_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the sample frames of music decoded since the mixer was made, 
+     * for checking streaming.
+     */
+    long getMusicFramesDecoded() {
+        return musicFramesDecoded;
+    }
+
+    /**
+     * Stops everything, frees all buffers and sources and closes the device. 
+     * Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        if (device == 0) {
+            return;
+        }
+        running = false;
+        musicThread.interrupt();
+        try {
+            musicThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeMusic();
+        alDeleteSources(musicSource);
+        alDeleteBuffers(musicBuffers);
+        for (int source : sources) {
+            alSourceStop(source);
+        }
+        alDeleteSources(sources);
+        alDeleteBuffers(Arrays.copyOf(sounds, soundCount));
+        MemoryUtil.memFree(musicSamples);
+        alcMakeContextCurrent(0);
+        alcDestroyContext(context);
+        alcCloseDevice(device);
+        device = 0;
+        ResourceRegistry.unregister(this);
+    }
+}
@@ -0,0 +1,56 @@
+package engine;
+
+/**
+ * A square block of generated values, such as terrain heights, made by a 
+ * ChunkStreamer.
+ */
+public final class Chunk {
+    private int chunkX;
+    private int chunkY;
+    private int size;
+    private float[] values;
+
+    /**
+     * Initializes a chunk.
+     * 
+     * @param chunkX x position in chunks
+     * @param chunkY y position in chunks
+     * @param size width and height in values
+     * @param values row major values, size * size long
+     */
+    public Chunk(int chunkX, int chunkY, int size, float[] values) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.size = size;
+        this.values = values;
+    }
+
+    /**
+     * Returns the value at a position inside the chunk.
+     * 
+     * @param x x position in values, from 0 to size - 1
+     * @param y y position in values, from 0 to size - 1
+     */
+    public float getValue(int x, int y) {
+        return values[y * size + x];
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkY() {
+        return chunkY;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the row major values. Changing it changes the chunk.
+     */
+    public float[] getValues() {
+        return values;
+    }
+}
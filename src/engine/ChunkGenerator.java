@@ -0,0 +1,24 @@
+package engine;
+
+/**
+ * Fills in the values of a chunk. Called from ChunkStreamer worker threads, 
+ * so it must not touch OpenGL or unsynchronized game state.
+ * 
+ * A terrain generator could be:
+ * 
+ *     (noise, chunkX, chunkY, size, out) -> noise.fill(out, 
+ *         chunkX * size * 0.02f, chunkY * size * 0.02f, 0.02f, size, size, 
+ *         4, 2.0f, 0.5f)
+ */
+public interface ChunkGenerator {
+    /**
+     * Generates a chunk.
+     * 
+     * @param noise noise of the streamer
+     * @param chunkX x position in chunks
+     * @param chunkY y position in chunks
+     * @param size width and height in values
+     * @param out row major array, size * size long, to write the values to
+     */
+    void generate(Noise noise, int chunkX, int chunkY, int size, float[] out);
+}
@@ -0,0 +1,298 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates chunks around the camera on worker threads. Finished chunks are
+ * kept in a least recently used cache, and evicted ones can be spilled to
+ * memory mapped files so they do not need generating again.
+ * 
+ * All methods are meant for the main thread and never wait for generation.
+ * Chunks that are not ready yet are returned as null.
+ */
+public final class ChunkStreamer {
+    private Noise noise;
+    private int chunkSize;
+    private float chunkPixels;
+    private int radius;
+    private ChunkGenerator generator;
+    private ExecutorService workers;
+    private LinkedHashMap<Long, Chunk> cache;
+    // Chunks submitted to the workers and not drained yet.
+    private HashSet<Long> pending = new HashSet<>();
+    private ConcurrentLinkedQueue<Chunk> finished =
+        new ConcurrentLinkedQueue<>();
+    // Chunks the workers dropped for being out of range by the time they
+    // got to them.
+    private ConcurrentLinkedQueue<Long> dropped =
+        new ConcurrentLinkedQueue<>();
+    // Key of the chunk the camera was in at the last update.
+    private volatile long centerKey;
+    private volatile RuntimeException failure;
+    private Path diskCache;
+    private String generatorVersion;
+
+    /**
+     * Initializes the streamer and starts its worker threads.
+     * 
+     * @param noise noise passed to the generator
+     * @param chunkSize width and height of a chunk in values
+     * @param tileSize width and height of a value in pixels
+     * @param radius how many chunks around the camera chunk to keep loaded
+     * @param maxCachedChunks most chunks kept in memory. Must be at least the
+     *     (2 * radius + 1) squared chunks around the camera.
+     * @param threads number of worker threads
+     * @param generator fills in the values of each chunk
+     */
+    public ChunkStreamer(Noise noise, int chunkSize, float tileSize,
+        int radius, int maxCachedChunks, int threads, ChunkGenerator generator)
+    {
+        if (maxCachedChunks < (2 * radius + 1) * (2 * radius + 1)) {
+            throw new RuntimeException(
+                "Cache is too small for the chunks around the camera.");
+        }
+        this.noise = noise;
+        this.chunkSize = chunkSize;
+        this.chunkPixels = chunkSize * tileSize;
+        this.radius = radius;
+        this.generator = generator;
+        cache = new LinkedHashMap<Long, Chunk>(maxCachedChunks * 2, 0.75f,
+            true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+                if (size() <= maxCachedChunks) {
+                    return false;
+                }
+                spill(eldest.getValue());
+                return true;
+            }
+        };
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "BAS-E chunk generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private long key(int chunkX, int chunkY) {
+        return (long)chunkX << 32 | (chunkY & 0xFFFFFFFFL);
+    }
+
+    private Path chunkPath(int chunkX, int chunkY) {
+        return diskCache.resolve(generatorVersion + "_" + noise.getSeed() + "_"
+            + chunkX + "_" + chunkY + ".chunk");
+    }
+
+    /**
+     * Returns wether a chunk is within the radius of the chunk the camera was
+     * in at the last update.
+     */
+    private boolean isInRange(int chunkX, int chunkY) {
+        long center = centerKey;
+        return Math.abs(chunkX - (int)(center >> 32)) <= radius
+            && Math.abs(chunkY - (int)center) <= radius;
+    }
+
+    /**
+     * Writes an evicted chunk to the disk cache on a worker thread.
+     */
+    private void spill(Chunk chunk) {
+        // The workers stop taking jobs once shut down.
+        if (diskCache == null || workers.isShutdown()) {
+            return;
+        }
+        Path path = chunkPath(chunk.getChunkX(), chunk.getChunkY());
+        workers.execute(() -> {
+            if (Files.exists(path)) {
+                return;
+            }
+            // Written next to it and moved in place, so a worker loading the
+            // chunk never sees a half written file.
+            Path temporaryPath = path.resolveSibling(path.getFileName()
+                + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING))
+                {
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        chunk.getValues().length * 4L).asFloatBuffer()
+                        .put(chunk.getValues());
+                }
+                Files.move(temporaryPath, path,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Losing a spilled chunk only means generating it again.
+            }
+        });
+    }
+
+    /**
+     * Reads a spilled chunk.
+     * 
+     * @return false if it is not on disk
+     */
+    private boolean load(Path path, float[] values) {
+        if (path == null || !Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.READ))
+        {
+            if (channel.size() != values.length * 4L) {
+                return false;
+            }
+            FloatBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size()).asFloatBuffer();
+            buffer.get(values);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void request(int chunkX, int chunkY) {
+        long key = key(chunkX, chunkY);
+        if (workers.isShutdown() || cache.get(key) != null 
+            || !pending.add(key)) 
+        {
+            return;
+        }
+        Path path = diskCache == null ? null : chunkPath(chunkX, chunkY);
+        workers.execute(() -> {
+            // The camera may have moved on while the job was queued, and
+            // chunks it left should not hold up the ones it is near now.
+            if (!isInRange(chunkX, chunkY)) {
+                dropped.add(key);
+                return;
+            }
+            try {
+                float[] values = new float[chunkSize * chunkSize];
+                if (!load(path, values)) {
+                    generator.generate(noise, chunkX, chunkY, chunkSize,
+                        values);
+                }
+                finished.add(new Chunk(chunkX, chunkY, chunkSize, values));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /**
+     * Collects finished chunks and requests the missing ones around the
+     * camera, nearest first.
+     * 
+     * @param renderer renderer whose camera position is used
+     */
+    public void update(QuadBatch renderer) {
+        update(renderer.getCameraX(), renderer.getCameraY());
+    }
+
+    /**
+     * Collects finished chunks and requests the missing ones around a
+     * position, nearest first.
+     * 
+     * @param cameraX x position in pixels
+     * @param cameraY y position in pixels
+     */
+    public void update(float cameraX, float cameraY) {
+        if (failure != null) {
+            throw new RuntimeException("Chunk generation failed.", failure);
+        }
+        Chunk chunk = finished.poll();
+        while (chunk != null) {
+            long key = key(chunk.getChunkX(), chunk.getChunkY());
+            pending.remove(key);
+            cache.put(key, chunk);
+            chunk = finished.poll();
+        }
+        Long droppedKey = dropped.poll();
+        while (droppedKey != null) {
+            pending.remove(droppedKey);
+            droppedKey = dropped.poll();
+        }
+
+        int centerX = (int)Math.floor(cameraX / chunkPixels);
+        int centerY = (int)Math.floor(cameraY / chunkPixels);
+        centerKey = key(centerX, centerY);
+        request(centerX, centerY);
+        for (int ring = 1; ring <= radius; ring++) {
+            for (int i = -ring; i < ring; i++) {
+                request(centerX + i, centerY - ring);
+                request(centerX + ring, centerY + i);
+                request(centerX - i, centerY + ring);
+                request(centerX - ring, centerY - i);
+            }
+        }
+    }
+
+    /**
+     * Returns a loaded chunk.
+     * 
+     * @param chunkX x position in chunks
+     * @param chunkY y position in chunks
+     * @return the chunk, or null if it is not generated yet
+     */
+    public Chunk getChunk(int chunkX, int chunkY) {
+        return cache.get(key(chunkX, chunkY));
+    }
+
+    /**
+     * Returns the chunk containing a position.
+     * 
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return the chunk, or null if it is not generated yet
+     */
+    public Chunk getChunkAt(float x, float y) {
+        return getChunk((int)Math.floor(x / chunkPixels),
+            (int)Math.floor(y / chunkPixels));
+    }
+
+    /**
+     * Sets a directory for evicted chunks to be written to and read back
+     * from. Files are named by generator version, seed and chunk position, so
+     * chunks spilled by an older generator are never loaded.
+     * 
+     * @param directory existing directory, or null to stop spilling
+     * @param generatorVersion name of the generator and its version, like
+     *     terrain-3, of letters, digits, dots, dashes and underscores. Change
+     *     it whenever the generator makes different values.
+     */
+    public void setDiskCache(Path directory, String generatorVersion) {
+        if (directory != null && !Files.isDirectory(directory)) {
+            throw new RuntimeException("Path is not a directory.");
+        }
+        if (directory != null
+            && !generatorVersion.matches("[A-Za-z0-9._-]+"))
+        {
+            throw new RuntimeException("Generator version is not a valid "
+                + "file name.");
+        }
+        diskCache = directory;
+        this.generatorVersion = generatorVersion;
+    }
+
+    /**
+     * Stops the worker threads. Chunks still being generated are dropped, 
+     * and update() only collects finished ones after this.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
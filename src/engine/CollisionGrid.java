@@ -0,0 +1,130 @@
+package engine;
+
+/**
+ * Static tile collision layer. Stores one solid bit per tile, so a level
+ * needs a single grid instead of a PhysicsEntity per solid tile.
+ */
+public final class CollisionGrid {
+    private int width;
+    private int height;
+    private float tileSize;
+    private float inverseTileSize;
+    private float xPosition;
+    private float yPosition;
+    private long[] solids;
+
+    /**
+     * Initializes an empty grid.
+     * 
+     * @param width width in tiles
+     * @param height height in tiles
+     * @param tileSize width and height of a tile in pixels
+     * @param xPosition x position of the grid's top left corner in pixels
+     * @param yPosition y position of the grid's top left corner in pixels
+     */
+    public CollisionGrid(int width, int height, float tileSize, float xPosition,
+        float yPosition)
+    {
+        if (width <= 0 || height <= 0 || tileSize <= 0.0f) {
+            throw new RuntimeException("Grid size must be positive.");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.inverseTileSize = 1.0f / tileSize;
+        this.xPosition = xPosition;
+        this.yPosition = yPosition;
+        solids = new long[(width * height + 63) >> 6];
+    }
+
+    /**
+     * Sets wether a tile is solid.
+     * 
+     * @param x x position in tiles
+     * @param y y position in tiles
+     * @param solid wether the tile should be collided with
+     */
+    public void setSolid(int x, int y, boolean solid) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new RuntimeException("Tile is outside of the grid.");
+        }
+        int index = y * width + x;
+        if (solid) {
+            solids[index >> 6] |= 1L << index;
+        }
+        else {
+            solids[index >> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Returns wether a tile is solid. Tiles outside of the grid are not.
+     * 
+     * @param x x position in tiles
+     * @param y y position in tiles
+     */
+    public boolean isSolid(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        int index = y * width + x;
+        return (solids[index >> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Clears every tile.
+     */
+    public void clear() {
+        for (int i = 0; i < solids.length; i++) {
+            solids[i] = 0L;
+        }
+    }
+
+    /**
+     * Returns the tile column containing the x position in pixels.
+     */
+    public int getTileX(float x) {
+        return (int)Math.floor((x - xPosition) * inverseTileSize);
+    }
+
+    /**
+     * Returns the tile row containing the y position in pixels.
+     */
+    public int getTileY(float y) {
+        return (int)Math.floor((y - yPosition) * inverseTileSize);
+    }
+
+    /**
+     * Returns the x position of a tile's left edge in pixels.
+     */
+    public float getTileLeft(int x) {
+        return xPosition + x * tileSize;
+    }
+
+    /**
+     * Returns the y position of a tile's top edge in pixels.
+     */
+    public float getTileTop(int y) {
+        return yPosition + y * tileSize;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getTileSize() {
+        return tileSize;
+    }
+
+    public float getXPosition() {
+        return xPosition;
+    }
+
+    public float getYPosition() {
+        return yPosition;
+    }
+}
@@ -0,0 +1,304 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Queue of contact events written by PhysicsWorld.step(). Events are kept in 
+ * preallocated arrays used as a ring buffer, so reading them allocates 
+ * nothing. Drain it once per step with next() and the getters:
+ * 
+ *     while (contactEvents.next()) {
+ *         if (contactEvents.getType() == ContactEvents.BEGIN) { ... }
+ *     }
+ * 
+ * Events that do not fit are dropped and counted by getDroppedCount(), and 
+ * so are pairs past the number of events the queue holds. A dropped pair is 
+ * reported as a BEGIN again the next step it is found.
+ */
+public final class ContactEvents {
+    /** Two entities started touching this step. */
+    public static final int BEGIN = 0;
+    /** Two entities were touching last step and still are. */
+    public static final int PERSIST = 1;
+    /** Two entities stopped touching, or one was destroyed. */
+    public static final int END = 2;
+    private final long EMPTY_PAIR = -1L;
+    private int[] types;
+    private int[] handlesA;
+    private int[] handlesB;
+    private float[] normalsX;
+    private float[] normalsY;
+    private float[] depths;
+    private boolean[] triggers;
+    private int mask;
+    private int head = 0;
+    private int tail = 0;
+    // Index of the event last returned by next().
+    private int current = -1;
+    private int droppedCount = 0;
+    // Open addressed sets of the pairs touching last step and this step.
+    private long[] previousPairs;
+    private long[] currentPairs;
+    private int previousPairCount = 0;
+    private int currentPairCount = 0;
+
+    /**
+     * Allocates the queue.
+     * 
+     * @param capacity most events held, and pairs tracked in a step, before 
+     *     they are dropped. Rounded up to a power of two.
+     */
+    public ContactEvents(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        types = new int[size];
+        handlesA = new int[size];
+        handlesB = new int[size];
+        normalsX = new float[size];
+        normalsY = new float[size];
+        depths = new float[size];
+        triggers = new boolean[size];
+        mask = size - 1;
+        previousPairs = new long[size * 2];
+        currentPairs = new long[size * 2];
+        Arrays.fill(previousPairs, EMPTY_PAIR);
+        Arrays.fill(currentPairs, EMPTY_PAIR);
+    }
+
+    private long pairKey(int handleA, int handleB) {
+        int low = Math.min(handleA, handleB);
+        int high = Math.max(handleA, handleB);
+        return (long)low << 32 | (high & 0xFFFFFFFFL);
+    }
+
+    private int pairSlot(long[] pairs, long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int)(hash >>> 32) & (pairs.length - 1);
+        while (pairs[slot] != EMPTY_PAIR && pairs[slot] != key) {
+            slot = (slot + 1) & (pairs.length - 1);
+        }
+        return slot;
+    }
+
+    /**
+     * Adds a pair to the current set. Pairs past half the set's size are 
+     * dropped and counted, so the step never allocates.
+     * 
+     * @return false if it was already there or was dropped
+     */
+    private boolean addCurrentPair(long key) {
+        int slot = pairSlot(currentPairs, key);
+        if (currentPairs[slot] == key) {
+            return false;
+        }
+        // Keeps the set at most half full.
+        if ((currentPairCount + 1) * 2 > currentPairs.length) {
+            droppedCount++;
+            return false;
+        }
+        currentPairs[slot] = key;
+        currentPairCount++;
+        return true;
+    }
+
+    private void push(int type, int handleA, int handleB, float normalX, 
+        float normalY, float depth, boolean trigger) 
+    {
+        if (tail - head == types.length) {
+            droppedCount++;
+            return;
+        }
+        int index = tail & mask;
+        types[index] = type;
+        handlesA[index] = handleA;
+        handlesB[index] = handleB;
+        normalsX[index] = normalX;
+        normalsY[index] = normalY;
+        depths[index] = depth;
+        triggers[index] = trigger;
+        tail++;
+    }
+
+    /**
+     * Records an overlap found during the step. Only the first report of a 
+     * pair in a step is kept.
+     */
+    void report(int handleA, int handleB, float normalX, float normalY, 
+        float depth, boolean trigger) 
+    {
+        long key = pairKey(handleA, handleB);
+        if (!addCurrentPair(key)) {
+            return;
+        }
+        boolean touching = previousPairs[pairSlot(previousPairs, key)] == key;
+        push(touching ? PERSIST : BEGIN, handleA, handleB, normalX, normalY, 
+            depth, trigger);
+    }
+
+    /**
+     * Returns the number of pairs reported so far this step.
+     */
+    int getPairCount() {
+        return currentPairCount;
+    }
+
+    /**
+     * Writes end events for pairs that stopped touching and gets ready for 
+     * the next step. Pairs with a sleeping entity are not updated by it, so 
+     * they are kept as touching until it wakes.
+     */
+    void finishStep(PhysicsWorld world) {
+        for (int i = 0; i < previousPairs.length; i++) {
+            long key = previousPairs[i];
+            if (key == EMPTY_PAIR 
+                || currentPairs[pairSlot(currentPairs, key)] == key) 
+            {
+                continue;
+            }
+            int handleA = (int)(key >>> 32);
+            int handleB = (int)key;
+            if (world.isAlive(handleA) && world.isAlive(handleB) 
+                && (world.get(handleA).isSleeping() 
+                || world.get(handleB).isSleeping())) 
+            {
+                addCurrentPair(key);
+            }
+            else {
+                push(END, handleA, handleB, 0.0f, 0.0f, 0.0f, false);
+            }
+        }
+
+        long[] pairs = previousPairs;
+        previousPairs = currentPairs;
+        currentPairs = pairs;
+        Arrays.fill(currentPairs, EMPTY_PAIR);
+        previousPairCount = currentPairCount;
+        currentPairCount = 0;
+    }
+
+    /**
+     * Returns the bytes writePairs() writes.
+     */
+    int getPairStateSize() {
+        return 4 + previousPairCount * 8;
+    }
+
+    /**
+     * Writes the pairs touching at the end of the last step.
+     */
+    void writePairs(ByteBuffer buffer) {
+        buffer.putInt(previousPairCount);
+        for (int i = 0; i < previousPairs.length; i++) {
+            if (previousPairs[i] != EMPTY_PAIR) {
+                buffer.putLong(previousPairs[i]);
+            }
+        }
+    }
+
+    /**
+     * Puts back the pairs written by writePairs(), so the next step begins 
+     * and ends contacts as it did the first time, and discards the queued 
+     * events.
+     */
+    void readPairs(ByteBuffer buffer) {
+        int pairCount = buffer.getInt();
+        if (pairCount * 2 > previousPairs.length) {
+            throw new RuntimeException("Too many contact pairs to restore.");
+        }
+        Arrays.fill(previousPairs, EMPTY_PAIR);
+        Arrays.fill(currentPairs, EMPTY_PAIR);
+        for (int i = 0; i < pairCount; i++) {
+            long key = buffer.getLong();
+            previousPairs[pairSlot(previousPairs, key)] = key;
+        }
+        previousPairCount = pairCount;
+        currentPairCount = 0;
+        clear();
+    }
+
+    /**
+     * Moves to the next event.
+     * 
+     * @return false if there are no more events
+     */
+    public boolean next() {
+        if (head == tail) {
+            current = -1;
+            return false;
+        }
+        current = head & mask;
+        head++;
+        return true;
+    }
+
+    /**
+     * Discards all queued events.
+     */
+    public void clear() {
+        head = tail;
+        current = -1;
+    }
+
+    /**
+     * Returns BEGIN, PERSIST or END.
+     */
+    public int getType() {
+        return types[current];
+    }
+
+    /**
+     * Returns the handle of the entity the normal points out of the other.
+     */
+    public int getHandleA() {
+        return handlesA[current];
+    }
+
+    public int getHandleB() {
+        return handlesB[current];
+    }
+
+    /**
+     * Returns the x of the direction entity A is pushed out of B. 0 for end 
+     * events.
+     */
+    public float getNormalX() {
+        return normalsX[current];
+    }
+
+    /**
+     * Returns the y of the direction entity A is pushed out of B. 0 for end 
+     * events.
+     */
+    public float getNormalY() {
+        return normalsY[current];
+    }
+
+    /**
+     * Returns how far the entities overlapped in pixels. 0 for end events.
+     */
+    public float getDepth() {
+        return depths[current];
+    }
+
+    /**
+     * Returns wether either entity is a trigger, so nothing was resolved.
+     */
+    public boolean isTrigger() {
+        return triggers[current];
+    }
+
+    /**
+     * Returns the number of events queued and not read yet.
+     */
+    public int getCount() {
+        return tail - head;
+    }
+
+    /**
+     * Returns how many events and pairs have been dropped because the queue 
+     * was full.
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+}
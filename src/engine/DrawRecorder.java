@@ -0,0 +1,297 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records every call made to a batch for a number of frames into a file, 
+ * passing the calls on as it goes. The file can be played back with 
+ * DrawReplay to reproduce a slow frame or measure a renderer change.
+ * 
+ *     recorder = new DrawRecorder(Paths.get("frames.draw"), renderer, 600, 
+ *         64 * 1024 * 1024);
+ *     // Draw to the recorder instead of the renderer, and each frame:
+ *     recorder.endFrame();
+ *     // Once done:
+ *     recorder.close();
+ * 
+ * The file is written through memory mapping, so recording costs about as 
+ * much as filling the vertex buffer.
+ */
+public final class DrawRecorder implements QuadBatch, AutoCloseable {
+    static final int MAGIC = 0x44534142;
+    static final int VERSION = 2;
+    // Magic, version, frame count and byte count.
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+    static final byte QUAD = 0;
+    static final byte REGION_QUAD = 1;
+    static final byte FLUSH = 2;
+    static final byte CAMERA = 3;
+    static final byte BIND = 4;
+    static final byte ATLAS = 5;
+    static final byte FRAME_END = 6;
+    static final byte MATERIAL = 7;
+    // Largest operation, a quad, and the atlas it may record first.
+    private final int MAX_OPERATION_SIZE = (2 + 13 * 4) + (2 + 2 * 4);
+    private final int MAX_ATLASES = 256;
+    private QuadBatch target;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int framesLeft;
+    private int frameCount = 0;
+    private boolean recording = true;
+    private TextureAtlas[] atlases = new TextureAtlas[8];
+    private int atlasCount = 0;
+
+    /**
+     * Opens the file and starts recording.
+     * 
+     * @param path file to write, replaced if it exists
+     * @param target batch to pass calls on to, or null to only record
+     * @param frames frames to record before stopping
+     * @param maxBytes most bytes to write. Recording stops early if they run 
+     *     out.
+     */
+    public DrawRecorder(Path path, QuadBatch target, int frames, 
+        long maxBytes) 
+    {
+        this.target = target;
+        framesLeft = frames;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, 
+                StandardOpenOption.READ, StandardOpenOption.WRITE, 
+                StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 
+                Math.min(maxBytes, Integer.MAX_VALUE));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open draw recording.", e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * Returns wether an operation fits, and stops recording if not.
+     */
+    private boolean canRecord() {
+        if (recording && buffer.remaining() < MAX_OPERATION_SIZE) {
+            recording = false;
+        }
+        return recording;
+    }
+
+    /**
+     * Returns the index of an atlas in the recording, recording its size the 
+     * first time it is seen.
+     */
+    private int atlasIndex(TextureAtlas textureAtlas) {
+        for (int i = 0; i < atlasCount; i++) {
+            if (atlases[i] == textureAtlas) {
+                return i;
+            }
+        }
+        if (atlasCount == MAX_ATLASES) {
+            throw new RuntimeException("Too many atlases to record.");
+        }
+        if (atlasCount == atlases.length) {
+            atlases = Arrays.copyOf(atlases, atlasCount * 2);
+        }
+        atlases[atlasCount] = textureAtlas;
+        buffer.put(ATLAS);
+        buffer.put((byte)atlasCount);
+        buffer.putInt(textureAtlas.getWidth());
+        buffer.putInt(textureAtlas.getHeight());
+        return atlasCount++;
+    }
+
+    @Override
+    public void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, float xTextureCoord, float yTextureCoord, 
+        float textureWidth, float textureHeight, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas) 
+    {
+        if (canRecord()) {
+            int atlas = atlasIndex(textureAtlas);
+            buffer.put(QUAD);
+            buffer.put((byte)atlas);
+            buffer.putFloat(xPosition);
+            buffer.putFloat(yPosition);
+            buffer.putFloat(zPosition);
+            buffer.putFloat(width);
+            buffer.putFloat(height);
+            buffer.putFloat(xTextureCoord);
+            buffer.putFloat(yTextureCoord);
+            buffer.putFloat(textureWidth);
+            buffer.putFloat(textureHeight);
+            buffer.putFloat(red);
+            buffer.putFloat(green);
+            buffer.putFloat(blue);
+            buffer.putFloat(alpha);
+        }
+        if (target != null) {
+            target.addQuad(xPosition, yPosition, zPosition, width, height, 
+                xTextureCoord, yTextureCoord, textureWidth, textureHeight, red, 
+                green, blue, alpha, textureAtlas);
+        }
+    }
+
+    /**
+     * Records the region's normalized texture coordinates, so the recording 
+     * does not depend on the regions added to the atlas.
+     */
+    @Override
+    public void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, int region, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas) 
+    {
+        if (canRecord()) {
+            int atlas = atlasIndex(textureAtlas);
+            float[] regions = textureAtlas.getRegions();
+            int offset = region * 4;
+            buffer.put(REGION_QUAD);
+            buffer.put((byte)atlas);
+            buffer.putFloat(xPosition);
+            buffer.putFloat(yPosition);
+            buffer.putFloat(zPosition);
+            buffer.putFloat(width);
+            buffer.putFloat(height);
+            buffer.putFloat(regions[offset]);
+            buffer.putFloat(regions[offset + 1]);
+            buffer.putFloat(regions[offset + 2]);
+            buffer.putFloat(regions[offset + 3]);
+            buffer.putFloat(red);
+            buffer.putFloat(green);
+            buffer.putFloat(blue);
+            buffer.putFloat(alpha);
+        }
+        if (target != null) {
+            target.addQuad(xPosition, yPosition, zPosition, width, height, 
+                region, red, green, blue, alpha, textureAtlas);
+        }
+    }
+
+    @Override
+    public void setMaterial(int material) {
+        if (canRecord()) {
+            buffer.put(MATERIAL);
+            buffer.put((byte)material);
+        }
+        if (target != null) {
+            target.setMaterial(material);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (canRecord()) {
+            buffer.put(FLUSH);
+        }
+        if (target != null) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void setCameraPosition(float x, float y, float z) {
+        if (canRecord()) {
+            buffer.put(CAMERA);
+            buffer.putFloat(x);
+            buffer.putFloat(y);
+            buffer.putFloat(z);
+        }
+        if (target != null) {
+            target.setCameraPosition(x, y, z);
+        }
+    }
+
+    @Override
+    public float getCameraX() {
+        return target == null ? 0.0f : target.getCameraX();
+    }
+
+    @Override
+    public float getCameraY() {
+        return target == null ? 0.0f : target.getCameraY();
+    }
+
+    /**
+     * Binds an atlas and records it.
+     */
+    public void bind(TextureAtlas textureAtlas) {
+        if (canRecord()) {
+            int atlas = atlasIndex(textureAtlas);
+            buffer.put(BIND);
+            buffer.put((byte)atlas);
+        }
+        // Atlases without a texture have nothing to bind.
+        if (textureAtlas.getId() != 0) {
+            textureAtlas.bind();
+        }
+    }
+
+    /**
+     * Marks the end of a frame. Recording stops once all the frames are 
+     * recorded.
+     */
+    public void endFrame() {
+        if (canRecord()) {
+            buffer.put(FRAME_END);
+            frameCount++;
+            framesLeft--;
+            if (framesLeft <= 0) {
+                recording = false;
+            }
+        }
+    }
+
+    /**
+     * Returns wether calls are still being recorded.
+     */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Returns the number of whole frames recorded.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the bytes written so far, header included.
+     */
+    public long getByteCount() {
+        return buffer.position();
+    }
+
+    /**
+     * Stops recording, writes the header and closes the file.
+     */
+    @Override
+    public void close() {
+        recording = false;
+        int length = buffer.position();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, frameCount);
+        buffer.putLong(12, length);
+        buffer.force();
+        try {
+            channel.truncate(length);
+        } catch (IOException e) {
+            // Can fail while the file is mapped on some systems, in which case 
+            // the length in the header is used.
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close draw recording.", e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Plays back a file written by DrawRecorder into a batch, as fast as 
+ * possible.
+ */
+public final class DrawReplay {
+    private MappedByteBuffer buffer;
+    private int frameCount;
+    private int length;
+    private TextureAtlas[] atlases = new TextureAtlas[256];
+    private TextureAtlas[] recordedAtlases = new TextureAtlas[256];
+    // Atlases without a texture that hold the recorded regions, so the 
+    // atlases drawn with are never changed.
+    private TextureAtlas[] regionAtlases = new TextureAtlas[256];
+    // Region of each region quad, in recorded order. Null until the regions 
+    // are added.
+    private int[] regionHandles;
+
+    /**
+     * Recorded texture coordinates of a region and the atlas they are in.
+     */
+    private static final class RegionKey {
+        private int atlas;
+        private float[] region;
+
+        RegionKey(int atlas, float[] region) {
+            this.atlas = atlas;
+            this.region = region;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof RegionKey)) {
+                return false;
+            }
+            RegionKey other = (RegionKey)object;
+            return atlas == other.atlas 
+                && Arrays.equals(region, other.region);
+        }
+
+        @Override
+        public int hashCode() {
+            return atlas * 31 + Arrays.hashCode(region);
+        }
+    }
+
+    /**
+     * Opens a recording.
+     * 
+     * @param path file written by DrawRecorder
+     */
+    public DrawReplay(Path path) {
+        try (FileChannel channel = FileChannel.open(path, 
+            StandardOpenOption.READ)) 
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+                channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open draw recording.", e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < DrawRecorder.HEADER_SIZE 
+            || buffer.getInt(0) != DrawRecorder.MAGIC) 
+        {
+            throw new RuntimeException("File is not a draw recording.");
+        }
+        if (buffer.getInt(4) != DrawRecorder.VERSION) {
+            throw new RuntimeException("Draw recording version is not "
+                + "supported.");
+        }
+        frameCount = buffer.getInt(8);
+        length = (int)buffer.getLong(12);
+    }
+
+    /**
+     * Sets a real atlas to draw with in place of a recorded one. Atlases that 
+     * are not set are replaced by ones without a texture, which is enough for 
+     * a HeadlessRenderer.
+     * 
+     * @param index order the atlas was first used in while recording
+     * @param textureAtlas atlas with the same size as the recorded one
+     */
+    public void setAtlas(int index, TextureAtlas textureAtlas) {
+        atlases[index] = textureAtlas;
+    }
+
+    /**
+     * Adds every distinct region the recording draws with once, with the 
+     * recorded texture coordinates exactly, so playing back draws through the 
+     * same region path as the recorded frames. The regions go in atlases of 
+     * the replay's own, one per recorded atlas.
+     */
+    private void addRegions() {
+        HashMap<RegionKey, Integer> handles = new HashMap<>();
+        int[] regionQuads = new int[256];
+        int regionQuadCount = 0;
+        buffer.position(DrawRecorder.HEADER_SIZE);
+        while (buffer.position() < length) {
+            byte operation = buffer.get();
+            switch (operation) {
+                case DrawRecorder.QUAD:
+                    buffer.position(buffer.position() + 1 + 13 * 4);
+                    break;
+                case DrawRecorder.REGION_QUAD: {
+                    int index = buffer.get() & 0xFF;
+                    buffer.position(buffer.position() + 5 * 4);
+                    float[] region = {buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat()};
+                    buffer.position(buffer.position() + 4 * 4);
+                    TextureAtlas atlas = regionAtlases[index];
+                    Integer handle = handles.computeIfAbsent(
+                        new RegionKey(index, region), 
+                        key -> atlas.addRegion(region));
+                    if (regionQuadCount == regionQuads.length) {
+                        regionQuads = Arrays.copyOf(regionQuads, 
+                            regionQuadCount * 2);
+                    }
+                    regionQuads[regionQuadCount] = handle;
+                    regionQuadCount++;
+                    break;
+                }
+                case DrawRecorder.CAMERA:
+                    buffer.position(buffer.position() + 3 * 4);
+                    break;
+                case DrawRecorder.BIND:
+                case DrawRecorder.MATERIAL:
+                    buffer.position(buffer.position() + 1);
+                    break;
+                case DrawRecorder.ATLAS: {
+                    int index = buffer.get() & 0xFF;
+                    int width = buffer.getInt();
+                    int height = buffer.getInt();
+                    if (regionAtlases[index] == null) {
+                        regionAtlases[index] = new TextureAtlas(width, height);
+                    }
+                    break;
+                }
+                case DrawRecorder.FLUSH:
+                case DrawRecorder.FRAME_END:
+                    break;
+                default:
+                    throw new RuntimeException("Draw recording is corrupt.");
+            }
+        }
+        regionHandles = regionQuads;
+    }
+
+    /**
+     * Plays back every recorded call.
+     * 
+     * @param target batch to play back into
+     * @return the number of quads played back
+     */
+    public long replay(QuadBatch target) {
+        if (regionHandles == null) {
+            addRegions();
+        }
+        long quadCount = 0;
+        int regionQuad = 0;
+        buffer.position(DrawRecorder.HEADER_SIZE);
+        while (buffer.position() < length) {
+            byte operation = buffer.get();
+            switch (operation) {
+                case DrawRecorder.QUAD: {
+                    TextureAtlas atlas = recordedAtlases[buffer.get() & 0xFF];
+                    target.addQuad(buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), atlas);
+                    quadCount++;
+                    break;
+                }
+                case DrawRecorder.REGION_QUAD: {
+                    TextureAtlas atlas = regionAtlases[buffer.get() & 0xFF];
+                    float xPosition = buffer.getFloat();
+                    float yPosition = buffer.getFloat();
+                    float zPosition = buffer.getFloat();
+                    float width = buffer.getFloat();
+                    float height = buffer.getFloat();
+                    // Skips the coordinates, already added as a region.
+                    buffer.position(buffer.position() + 4 * 4);
+                    target.addQuad(xPosition, yPosition, zPosition, width, 
+                        height, regionHandles[regionQuad], buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat(), 
+                        buffer.getFloat(), atlas);
+                    regionQuad++;
+                    quadCount++;
+                    break;
+                }
+                case DrawRecorder.FLUSH:
+                    target.flush();
+                    break;
+                case DrawRecorder.CAMERA:
+                    target.setCameraPosition(buffer.getFloat(), 
+                        buffer.getFloat(), buffer.getFloat());
+                    break;
+                case DrawRecorder.BIND: {
+                    TextureAtlas atlas = recordedAtlases[buffer.get() & 0xFF];
+                    if (atlas.getId() != 0) {
+                        atlas.bind();
+                    }
+                    break;
+                }
+                case DrawRecorder.ATLAS: {
+                    int index = buffer.get() & 0xFF;
+                    int width = buffer.getInt();
+                    int height = buffer.getInt();
+                    if (atlases[index] == null) {
+                        atlases[index] = new TextureAtlas(width, height);
+                    }
+                    recordedAtlases[index] = atlases[index];
+                    break;
+                }
+                case DrawRecorder.MATERIAL:
+                    target.setMaterial(buffer.get());
+                    break;
+                case DrawRecorder.FRAME_END:
+                    break;
+                default:
+                    throw new RuntimeException("Draw recording is corrupt.");
+            }
+        }
+        return quadCount;
+    }
+
+    /**
+     * Returns the number of frames in the recording.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Plays a recording back into a HeadlessRenderer and prints how fast it 
+     * went. Takes the file path and optionally how many times to play it.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: DrawReplay <recording> [repeats]");
+            return;
+        }
+        DrawReplay replay = new DrawReplay(Paths.get(args[0]));
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        try (HeadlessRenderer renderer = new HeadlessRenderer(1200.0f, 
+            800.0f)) 
+        {
+            // Once untimed, to warm up.
+            replay.replay(renderer);
+            long quadCount = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < repeats; i++) {
+                quadCount += replay.replay(renderer);
+            }
+            double seconds = (System.nanoTime() - start) / 1000000000.0;
+            int frames = replay.getFrameCount() * repeats;
+            System.out.printf("%d frames, %d quads in %.3f s (%.0f quads per "
+                + "second, %.3f ms per frame)%n", frames, quadCount, seconds, 
+                quadCount / seconds, seconds * 1000.0 / Math.max(frames, 1));
+        }
+    }
+}
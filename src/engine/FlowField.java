@@ -0,0 +1,98 @@
+package engine;
+
+/**
+ * Directions toward one goal tile from every tile of a CollisionGrid, so any
+ * number of agents heading to the same place can share a single search.
+ * Made by PathFinder.
+ * 
+ *     int tileX = grid.getTileX(x);
+ *     int tileY = grid.getTileY(y);
+ *     velocity.set(field.getDirectionX(tileX, tileY) * speed,
+ *         field.getDirectionY(tileX, tileY) * speed);
+ */
+public final class FlowField {
+    // Indexed by direction, matching PathFinder's neighbour order.
+    private static final int[] X_OFFSETS = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] Y_OFFSETS = {0, 1, 0, -1, 1, 1, -1, -1};
+    private final byte NO_DIRECTION = -1;
+    private int width;
+    private int height;
+    private int goalX;
+    private int goalY;
+    private int[] costs;
+    private byte[] directions;
+
+    FlowField(int width, int height, int goalX, int goalY, int[] costs,
+        byte[] directions)
+    {
+        this.width = width;
+        this.height = height;
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.costs = costs;
+        this.directions = directions;
+    }
+
+    private int direction(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return NO_DIRECTION;
+        }
+        return directions[y * width + x];
+    }
+
+    /**
+     * Returns the x step, -1, 0 or 1, to take from a tile toward the goal.
+     * 0 at the goal and on tiles that cannot reach it.
+     * 
+     * @param x x position in tiles
+     * @param y y position in tiles
+     */
+    public int getDirectionX(int x, int y) {
+        int direction = direction(x, y);
+        return direction == NO_DIRECTION ? 0 : X_OFFSETS[direction];
+    }
+
+    /**
+     * Returns the y step, -1, 0 or 1, to take from a tile toward the goal.
+     * 0 at the goal and on tiles that cannot reach it.
+     * 
+     * @param x x position in tiles
+     * @param y y position in tiles
+     */
+    public int getDirectionY(int x, int y) {
+        int direction = direction(x, y);
+        return direction == NO_DIRECTION ? 0 : Y_OFFSETS[direction];
+    }
+
+    /**
+     * Returns the cost of the shortest path from a tile to the goal, 10 per
+     * straight step and 14 per diagonal one, or -1 if it cannot reach it.
+     * 
+     * @param x x position in tiles
+     * @param y y position in tiles
+     */
+    public int getCost(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+        return costs[y * width + x];
+    }
+
+    /**
+     * Returns wether the goal can be reached from a tile.
+     * 
+     * @param x x position in tiles
+     * @param y y position in tiles
+     */
+    public boolean isReachable(int x, int y) {
+        return getCost(x, y) >= 0;
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+}
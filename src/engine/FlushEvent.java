@@ -0,0 +1,32 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a Renderer.flush() that drew something. Off 
+ * unless a recording enables engine.Flush.
+ */
+@Name("engine.Flush")
+@Label("Renderer Flush")
+@Category({"BAS-E", "Rendering"})
+@Description("Vertices uploaded and quads drawn by a renderer flush")
+@Enabled(false)
+@StackTrace(false)
+final class FlushEvent extends Event {
+    @Label("Quads")
+    int quads;
+
+    @Label("Translucent Quads")
+    int translucentQuads;
+
+    @Label("Uploaded")
+    @DataAmount
+    long bytes;
+}
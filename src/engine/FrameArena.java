@@ -0,0 +1,114 @@
+package engine;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Native scratch memory for things that only live for a frame. Allocating 
+ * moves a pointer forward and reset() moves it back, so there is no freeing 
+ * and nothing for the garbage collector.
+ * 
+ *     ByteBuffer scratch = frameArena.allocate(1024);
+ *     // Use it this frame, then at the start of the next:
+ *     frameArena.reset();
+ */
+public final class FrameArena implements AutoCloseable {
+    private final int ALIGNMENT = 16;
+    private ByteBuffer memory;
+    private long address;
+    private int capacity;
+    private int offset = 0;
+    private int highWater = 0;
+
+    /**
+     * Allocates the arena's memory.
+     * 
+     * @param capacity bytes available each frame
+     */
+    public FrameArena(int capacity) {
+        this.capacity = capacity;
+        memory = ResourceRegistry.malloc(capacity);
+        address = MemoryUtil.memAddress(memory);
+        ResourceRegistry.register(this, "FrameArena of " + capacity 
+            + " bytes");
+    }
+
+    /**
+     * Reserves memory until the next reset.
+     * 
+     * @param bytes size to reserve
+     * @return address of the memory, aligned to 16 bytes. Its contents are 
+     *     whatever was left there.
+     */
+    public long malloc(int bytes) {
+        if (memory == null) {
+            throw new RuntimeException("Frame arena is closed.");
+        }
+        int start = (offset + ALIGNMENT - 1) & -ALIGNMENT;
+        if (bytes < 0 || start > capacity - bytes) {
+            throw new RuntimeException("Frame arena is out of memory.");
+        }
+        offset = start + bytes;
+        if (offset > highWater) {
+            highWater = offset;
+        }
+        return address + start;
+    }
+
+    /**
+     * Reserves memory until the next reset and wraps it in a buffer.
+     * 
+     * @param bytes size to reserve
+     */
+    public ByteBuffer allocate(int bytes) {
+        return MemoryUtil.memByteBuffer(malloc(bytes), bytes);
+    }
+
+    /**
+     * Reserves zeroed memory until the next reset and wraps it in a buffer.
+     * 
+     * @param bytes size to reserve
+     */
+    public ByteBuffer calloc(int bytes) {
+        long start = malloc(bytes);
+        MemoryUtil.memSet(start, 0, bytes);
+        return MemoryUtil.memByteBuffer(start, bytes);
+    }
+
+    /**
+     * Frees everything allocated since the last reset. Buffers handed out 
+     * before must not be used after.
+     */
+    public void reset() {
+        offset = 0;
+    }
+
+    /**
+     * Returns the bytes in use since the last reset.
+     */
+    public int getUsed() {
+        return offset;
+    }
+
+    /**
+     * Returns the most bytes ever in use at once, for sizing the arena.
+     */
+    public int getHighWater() {
+        return highWater;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() {
+        if (memory == null) {
+            return;
+        }
+        ResourceRegistry.free(memory);
+        memory = null;
+        ResourceRegistry.unregister(this);
+    }
+}
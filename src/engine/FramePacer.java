@@ -0,0 +1,117 @@
+package engine;
+
+import static org.lwjgl.glfw.GLFW.glfwExtensionSupported;
+import static org.lwjgl.glfw.GLFW.glfwSwapInterval;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the frame rate without spinning a core at 100%.
+ * 
+ * Waiting sleeps until shortly before the frame is due and spins the rest of 
+ * the way, since sleeping alone wakes up late by an amount that depends on the 
+ * OS. How early to stop sleeping is learned from how late sleeps have been.
+ * 
+ * Call waitForNextFrame() right before polling input, so input is as fresh as 
+ * possible when the frame is drawn:
+ * 
+ *     framePacer.waitForNextFrame();
+ *     glfwPollEvents();
+ *     update();
+ *     render();
+ *     glfwSwapBuffers(window);
+ */
+public final class FramePacer {
+    private final long MIN_SPIN_NANOS = 50000;
+    private final long MAX_SPIN_NANOS = 4000000;
+    // Frames late by more than this are given up on instead of caught up.
+    private final int MAX_LATE_FRAMES = 2;
+    private long frameNanos = 0;
+    private long nextFrame = 0;
+    private long spinNanos = 1000000;
+
+    /**
+     * Initializes the pacer.
+     * 
+     * @param targetFps frames per second to limit to, or 0 for no limit
+     */
+    public FramePacer(float targetFps) {
+        setTargetFps(targetFps);
+    }
+
+    /**
+     * Sets the frames per second to limit to.
+     * 
+     * @param targetFps frames per second, or 0 for no limit
+     */
+    public void setTargetFps(float targetFps) {
+        frameNanos = targetFps <= 0.0f ? 0 
+            : (long)(1000000000.0 / targetFps);
+        nextFrame = 0;
+    }
+
+    /**
+     * Waits until the next frame is due. Returns right away if there is no 
+     * limit.
+     */
+    public void waitForNextFrame() {
+        if (frameNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextFrame == 0 || now - nextFrame > MAX_LATE_FRAMES * frameNanos) {
+            nextFrame = now;
+        }
+        long sleepUntil = nextFrame - spinNanos;
+        if (sleepUntil - now > 0) {
+            LockSupport.parkNanos(sleepUntil - now);
+            now = System.nanoTime();
+            // Keeps the largest recent oversleep, slowly forgetting old ones.
+            long oversleep = now - sleepUntil;
+            spinNanos = Math.max(spinNanos - (spinNanos >> 6), oversleep * 2);
+            spinNanos = Math.min(Math.max(spinNanos, MIN_SPIN_NANOS), 
+                MAX_SPIN_NANOS);
+        }
+        while (now - nextFrame < 0) {
+            Thread.onSpinWait();
+            now = System.nanoTime();
+        }
+        nextFrame += frameNanos;
+    }
+
+    /**
+     * Returns how long before a frame is due the pacer stops sleeping and 
+     * starts spinning, in nanoseconds.
+     */
+    public long getSpinNanos() {
+        return spinNanos;
+    }
+
+    /**
+     * Turns on v-sync for the current context. Adaptive v-sync swaps right 
+     * away when a frame misses the refresh, tearing briefly instead of 
+     * waiting for the next one. Falls back to normal v-sync when the driver 
+     * does not support it.
+     * 
+     * @param adaptive wether to try adaptive v-sync
+     * @return the swap interval set, -1 for adaptive or 1 for normal
+     */
+    public static int enableVsync(boolean adaptive) {
+        if (adaptive && (glfwExtensionSupported("WGL_EXT_swap_control_tear") 
+            || glfwExtensionSupported("GLX_EXT_swap_control_tear"))) 
+        {
+            glfwSwapInterval(-1);
+            return -1;
+        }
+        glfwSwapInterval(1);
+        return 1;
+    }
+
+    /**
+     * Turns off v-sync for the current context. Pair with a target frame rate 
+     * to keep from drawing frames nobody sees.
+     */
+    public static void disableVsync() {
+        glfwSwapInterval(0);
+    }
+}
@@ -0,0 +1,218 @@
+package engine;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records frame and phase times into histograms, so stutter shows up as
+ * percentiles instead of being averaged away into a frame count.
+ * 
+ * Recording is two System.nanoTime() calls and an array increment, with no
+ * allocation. Buckets are 8 per power of two of microseconds, so reported
+ * times are at most 12.5% above the real ones.
+ * 
+ *     frameTimer.beginFrame();
+ *     frameTimer.begin(FrameTimer.UPDATE);
+ *     update();
+ *     frameTimer.end(FrameTimer.UPDATE);
+ */
+public final class FrameTimer {
+    /** Time from one beginFrame() to the next. Recorded automatically. */
+    public static final int FRAME = 0;
+    public static final int UPDATE = 1;
+    /** Recording draw calls into the batch. */
+    public static final int RENDER = 2;
+    public static final int FLUSH = 3;
+    public static final int SWAP = 4;
+    private final String[] PHASE_NAMES = {"frame", "update", "render",
+        "flush", "swap"};
+    private final int SUB_BUCKETS = 8;
+    // Largest power of two of microseconds with its own buckets, about 4.7
+    // hours. Longer times go in the last bucket.
+    private final int MAX_POWER = 34;
+    private final int BUCKET_COUNT = (MAX_POWER - 1) * SUB_BUCKETS;
+    private long[][] counts = new long[PHASE_NAMES.length][BUCKET_COUNT];
+    private long[] totals = new long[PHASE_NAMES.length];
+    private long[] maxNanos = new long[PHASE_NAMES.length];
+    private long[] phaseStarts = new long[PHASE_NAMES.length];
+    private long frameStart = 0;
+    private long lastReport = System.nanoTime();
+
+    private int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int)micros;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        if (power > MAX_POWER) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int)(micros >> (power - 3)) & (SUB_BUCKETS - 1);
+        return (power - 2) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest time in microseconds that goes into a bucket.
+     */
+    private long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int power = bucket / SUB_BUCKETS + 2;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (long)(SUB_BUCKETS + subBucket + 1) << (power - 3);
+    }
+
+    /**
+     * Records a time directly.
+     * 
+     * @param phase FRAME, UPDATE, RENDER, FLUSH or SWAP
+     * @param nanos time in nanoseconds
+     */
+    public void record(int phase, long nanos) {
+        counts[phase][bucket(nanos / 1000)]++;
+        totals[phase]++;
+        if (nanos > maxNanos[phase]) {
+            maxNanos[phase] = nanos;
+        }
+    }
+
+    /**
+     * Marks the start of a frame and records the time since the last one.
+     */
+    public void beginFrame() {
+        long now = System.nanoTime();
+        if (frameStart != 0) {
+            record(FRAME, now - frameStart);
+        }
+        frameStart = now;
+    }
+
+    /**
+     * Marks the start of a phase.
+     * 
+     * @param phase UPDATE, RENDER, FLUSH or SWAP
+     */
+    public void begin(int phase) {
+        phaseStarts[phase] = System.nanoTime();
+    }
+
+    /**
+     * Records the time since begin() was called for the phase.
+     * 
+     * @param phase UPDATE, RENDER, FLUSH or SWAP
+     */
+    public void end(int phase) {
+        record(phase, System.nanoTime() - phaseStarts[phase]);
+    }
+
+    /**
+     * Returns the time in milliseconds that a percentage of the recorded times
+     * are at or under.
+     * 
+     * @param phase FRAME, UPDATE, RENDER, FLUSH or SWAP
+     * @param percentile percentage between 0 and 100, such as 99
+     */
+    public float getPercentile(int phase, double percentile) {
+        if (totals[phase] == 0) {
+            return 0.0f;
+        }
+        long target = (long)Math.ceil(totals[phase] * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[phase][i];
+            if (seen >= Math.max(target, 1)) {
+                // A bucket's limit can be above anything actually recorded.
+                return Math.min(bucketLimit(i) / 1000.0f,
+                    getMax(phase));
+            }
+        }
+        return getMax(phase);
+    }
+
+    /**
+     * Returns the longest recorded time in milliseconds.
+     */
+    public float getMax(int phase) {
+        return maxNanos[phase] / 1000000.0f;
+    }
+
+    /**
+     * Returns the number of recorded times.
+     */
+    public long getCount(int phase) {
+        return totals[phase];
+    }
+
+    /**
+     * Clears everything recorded. The frame in progress is still timed.
+     */
+    public void reset() {
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[phase][i] = 0;
+            }
+            totals[phase] = 0;
+            maxNanos[phase] = 0;
+        }
+    }
+
+    /**
+     * Prints count, p50, p95, p99 and max of every phase that has times.
+     */
+    public void report(PrintStream out) {
+        out.println("phase      count      p50 ms   p95 ms   p99 ms   max ms");
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+            if (totals[phase] == 0) {
+                continue;
+            }
+            out.printf("%-8s %7d %10.3f %8.3f %8.3f %8.3f%n",
+                PHASE_NAMES[phase], totals[phase], getPercentile(phase, 50),
+                getPercentile(phase, 95), getPercentile(phase, 99),
+                getMax(phase));
+        }
+    }
+
+    /**
+     * Prints a report and resets if enough time has passed since the last
+     * one. Meant to be called every frame.
+     * 
+     * @param seconds time between reports
+     * @param out stream to print to
+     * @return wether a report was printed
+     */
+    public boolean reportEvery(float seconds, PrintStream out) {
+        long now = System.nanoTime();
+        if (now - lastReport < (long)(seconds * 1000000000.0)) {
+            return false;
+        }
+        lastReport = now;
+        report(out);
+        reset();
+        return true;
+    }
+
+    /**
+     * Writes the raw histograms as CSV, one row per non empty bucket, for
+     * comparing runs.
+     * 
+     * @param path file to write, replaced if it exists
+     */
+    public void exportCsv(Path path) {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            writer.write("phase,bucket_limit_us,count\n");
+            for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    if (counts[phase][i] != 0) {
+                        writer.write(PHASE_NAMES[phase] + "," + bucketLimit(i)
+                            + "," + counts[phase][i] + "\n");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write frame times.", e);
+        }
+    }
+}
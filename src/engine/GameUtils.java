@@ -6,15 +6,17 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
-import java.time.Instant;
 
 import org.lwjgl.system.MemoryStack;
 
 /**
  * Utility class for things like getting the cursor position and fps.
+ * 
+ * Each getter here is a native call. Input caches the same values from
+ * callbacks, which is cheaper when reading them every frame.
  */
 public final class GameUtils {
-    static double lastEpoch;
+    static long lastEpoch;
     static int frames = 0;
     static int fps;
 
@@ -59,13 +61,15 @@ public final class GameUtils {
     }
 
     /**
-     * Figures out frames per second in the while loop.
+     * Figures out frames per second in the while loop. Use FrameTimer to see 
+     * how long frames actually take.
      * 
      * @return frames per second counted
      */
     public static int figureOutFPS() {
-        if (lastEpoch != Instant.now().getEpochSecond()) {
-            lastEpoch = Instant.now().getEpochSecond();
+        long epoch = System.nanoTime();
+        if (epoch - lastEpoch >= 1000000000L) {
+            lastEpoch = epoch;
             fps = frames;
             frames = 1;
         }
@@ -0,0 +1,145 @@
+package engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A batch that builds and sorts the same vertices as Renderer but never 
+ * draws them, for running games on servers with no display. Needs no GLFW 
+ * or OpenGL.
+ * 
+ * Counts what would have been drawn, which is also useful for benchmarking 
+ * the drawing code.
+ */
+public final class HeadlessRenderer implements QuadBatch, AutoCloseable {
+    private QuadBuffer quads = new QuadBuffer();
+    // Vertices of the last flush, in draw order.
+    private ByteBuffer sortedVertices;
+    private float windowWidth;
+    private float windowHeight;
+    private float cameraX;
+    private float cameraY;
+    private long quadCount = 0;
+    private long flushCount = 0;
+
+    /**
+     * Initializes the batch.
+     * 
+     * @param windowWidth width in pixels of the pretend window
+     * @param windowHeight height in pixels of the pretend window
+     */
+    public HeadlessRenderer(float windowWidth, float windowHeight) {
+        this.windowWidth = windowWidth;
+        this.windowHeight = windowHeight;
+        cameraX = windowWidth / 2.0f;
+        cameraY = windowHeight / 2.0f;
+        ResourceRegistry.register(this, "HeadlessRenderer");
+    }
+
+    @Override
+    public void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, float xTextureCoord, float yTextureCoord, 
+        float textureWidth, float textureHeight, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas) 
+    {
+        quadCount++;
+        if (quads.addQuad(xPosition, yPosition, zPosition, width, height, 
+            xTextureCoord, yTextureCoord, textureWidth, textureHeight, red, 
+            green, blue, alpha, textureAtlas)) 
+        {
+            flush();
+        }
+    }
+
+    @Override
+    public void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, int region, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas) 
+    {
+        quadCount++;
+        if (quads.addQuad(xPosition, yPosition, zPosition, width, height, 
+            region, red, green, blue, alpha, textureAtlas)) 
+        {
+            flush();
+        }
+    }
+
+    @Override
+    public void setMaterial(int material) {
+        quads.setMaterial(material);
+    }
+
+    public int getMaterial() {
+        return quads.getMaterial();
+    }
+
+    /**
+     * Sorts the batches into draw order like Renderer, then throws them 
+     * away.
+     */
+    @Override
+    public void flush() {
+        if (quads.getQuadCount(OPAQUE) + quads.getQuadCount(ALPHA_TESTED) 
+            + quads.getQuadCount(TRANSLUCENT) != 0) 
+        {
+            sortedVertices = quads.sort();
+            flushCount++;
+        }
+    }
+
+    @Override
+    public void setCameraPosition(float x, float y, float z) {
+        cameraX = x;
+        cameraY = y;
+    }
+
+    @Override
+    public float getCameraX() {
+        return cameraX;
+    }
+
+    @Override
+    public float getCameraY() {
+        return cameraY;
+    }
+
+    public float getWindowWidth() {
+        return windowWidth;
+    }
+
+    public float getWindowHeight() {
+        return windowHeight;
+    }
+
+    /**
+     * Returns the number of quads added since the batch was made.
+     */
+    public long getQuadCount() {
+        return quadCount;
+    }
+
+    /**
+     * Returns the number of non empty flushes since the batch was made.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Returns the vertices of the last non empty flush in the order Renderer 
+     * would have drawn them, for checking what would have been drawn. Null 
+     * before the first flush.
+     */
+    public ByteBuffer getVertices() {
+        return sortedVertices;
+    }
+
+    /**
+     * Frees the batches. Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        quads.free();
+        sortedVertices = null;
+        ResourceRegistry.unregister(this);
+    }
+}
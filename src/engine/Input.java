@@ -0,0 +1,318 @@
+package engine;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LAST;
+import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LAST;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+import static org.lwjgl.glfw.GLFW.glfwGetCursorPos;
+import static org.lwjgl.glfw.GLFW.glfwGetWindowSize;
+import static org.lwjgl.glfw.GLFW.glfwSetCursorPosCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetKeyCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetMouseButtonCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetScrollCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowSizeCallback;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.glfw.GLFWCursorPosCallback;
+import org.lwjgl.glfw.GLFWKeyCallback;
+import org.lwjgl.glfw.GLFWMouseButtonCallback;
+import org.lwjgl.glfw.GLFWScrollCallback;
+import org.lwjgl.glfw.GLFWWindowSizeCallback;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Collects window input from GLFW callbacks.
+ * 
+ * The current state (keys held, cursor position, window size) is cached as
+ * the callbacks come in, so reading it is a field read instead of a native
+ * call. Its getters are meant for the thread that polls GLFW events.
+ * 
+ * Every event is also written into a ring buffer of preallocated arrays with
+ * one producer, the GLFW thread, and one consumer, which can be another
+ * thread such as a simulation thread:
+ * 
+ *     while (input.next()) {
+ *         if (input.getType() == Input.KEY) { ... }
+ *     }
+ * 
+ * Events that do not fit are dropped and counted by getDroppedCount().
+ */
+public final class Input {
+    /** Code is the key, action is GLFW_PRESS, GLFW_RELEASE or GLFW_REPEAT. */
+    public static final int KEY = 0;
+    /** X and y are the cursor position in pixels. */
+    public static final int CURSOR = 1;
+    /** Code is the button, action is GLFW_PRESS or GLFW_RELEASE. */
+    public static final int MOUSE_BUTTON = 2;
+    /** X and y are the scroll offsets. */
+    public static final int SCROLL = 3;
+    /** X and y are the new window width and height in pixels. */
+    public static final int RESIZE = 4;
+    private int[] types;
+    private int[] codes;
+    private int[] actions;
+    private int[] modifiers;
+    private double[] xs;
+    private double[] ys;
+    private long[] times;
+    private int mask;
+    // Only the producer writes tail and only the consumer writes head.
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile int droppedCount = 0;
+    // The event last returned by next(), copied out of the ring.
+    private int type;
+    private int code;
+    private int action;
+    private int mods;
+    private double x;
+    private double y;
+    private long time;
+    // Cached state.
+    private boolean[] keys = new boolean[GLFW_KEY_LAST + 1];
+    private boolean[] mouseButtons = new boolean[GLFW_MOUSE_BUTTON_LAST + 1];
+    private float cursorX;
+    private float cursorY;
+    private int windowWidth;
+    private int windowHeight;
+    private double scrollX = 0.0;
+    private double scrollY = 0.0;
+    // Kept so the callbacks can be removed and freed.
+    private long window;
+    private GLFWKeyCallback keyCallback;
+    private GLFWCursorPosCallback cursorPosCallback;
+    private GLFWMouseButtonCallback mouseButtonCallback;
+    private GLFWScrollCallback scrollCallback;
+    private GLFWWindowSizeCallback windowSizeCallback;
+
+    /**
+     * Sets the window's input callbacks and reads the starting cursor
+     * position and window size.
+     * 
+     * @param window GLFW window
+     * @param capacity most events held before they are dropped. Rounded up to
+     *     a power of two.
+     */
+    public Input(long window, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        types = new int[size];
+        codes = new int[size];
+        actions = new int[size];
+        modifiers = new int[size];
+        xs = new double[size];
+        ys = new double[size];
+        times = new long[size];
+        mask = size - 1;
+
+        try (MemoryStack stack = stackPush()) {
+            DoubleBuffer posX = stack.mallocDouble(1);
+            DoubleBuffer posY = stack.mallocDouble(1);
+            glfwGetCursorPos(window, posX, posY);
+            cursorX = (float)posX.get(0);
+            cursorY = (float)posY.get(0);
+
+            IntBuffer width = stack.mallocInt(1);
+            IntBuffer height = stack.mallocInt(1);
+            glfwGetWindowSize(window, width, height);
+            windowWidth = width.get(0);
+            windowHeight = height.get(0);
+        }
+
+        keyCallback = GLFWKeyCallback.create(
+            (handle, key, scancode, action, mods) -> {
+                if (key >= 0 && key < keys.length) {
+                    keys[key] = action != GLFW_RELEASE;
+                }
+                push(KEY, key, action, mods, 0.0, 0.0);
+            });
+        cursorPosCallback = GLFWCursorPosCallback.create((handle, x, y) -> {
+            cursorX = (float)x;
+            cursorY = (float)y;
+            push(CURSOR, 0, 0, 0, x, y);
+        });
+        mouseButtonCallback = GLFWMouseButtonCallback.create(
+            (handle, button, action, mods) -> {
+                if (button >= 0 && button < mouseButtons.length) {
+                    mouseButtons[button] = action != GLFW_RELEASE;
+                }
+                push(MOUSE_BUTTON, button, action, mods, 0.0, 0.0);
+            });
+        scrollCallback = GLFWScrollCallback.create((handle, x, y) -> {
+            scrollX += x;
+            scrollY += y;
+            push(SCROLL, 0, 0, 0, x, y);
+        });
+        windowSizeCallback = GLFWWindowSizeCallback.create(
+            (handle, width, height) -> {
+                windowWidth = width;
+                windowHeight = height;
+                push(RESIZE, 0, 0, 0, width, height);
+            });
+        this.window = window;
+        glfwSetKeyCallback(window, keyCallback);
+        glfwSetCursorPosCallback(window, cursorPosCallback);
+        glfwSetMouseButtonCallback(window, mouseButtonCallback);
+        glfwSetScrollCallback(window, scrollCallback);
+        glfwSetWindowSizeCallback(window, windowSizeCallback);
+    }
+
+    private void push(int type, int code, int action, int mods, double x,
+        double y)
+    {
+        long currentTail = tail;
+        if (currentTail - head == types.length) {
+            droppedCount++;
+            return;
+        }
+        int index = (int)currentTail & mask;
+        types[index] = type;
+        codes[index] = code;
+        actions[index] = action;
+        modifiers[index] = mods;
+        xs[index] = x;
+        ys[index] = y;
+        times[index] = System.nanoTime();
+        // Publishes the slot to the consumer.
+        tail = currentTail + 1;
+    }
+
+    /**
+     * Moves to the next event. Only call from one thread.
+     * 
+     * @return false if there are no more events
+     */
+    public boolean next() {
+        long currentHead = head;
+        if (currentHead == tail) {
+            return false;
+        }
+        int index = (int)currentHead & mask;
+        type = types[index];
+        code = codes[index];
+        action = actions[index];
+        mods = modifiers[index];
+        x = xs[index];
+        y = ys[index];
+        time = times[index];
+        // Gives the slot back to the producer.
+        head = currentHead + 1;
+        return true;
+    }
+
+    /**
+     * Returns KEY, CURSOR, MOUSE_BUTTON, SCROLL or RESIZE.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the key or mouse button of the event.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns GLFW_PRESS, GLFW_RELEASE or GLFW_REPEAT.
+     */
+    public int getAction() {
+        return action;
+    }
+
+    /**
+     * Returns the GLFW modifier key bits held during the event.
+     */
+    public int getMods() {
+        return mods;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Returns the System.nanoTime() the event came in at.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns how many events have been dropped because the buffer was full.
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public boolean isKeyDown(int key) {
+        return keys[key];
+    }
+
+    public boolean isMouseButtonDown(int button) {
+        return mouseButtons[button];
+    }
+
+    public float getCursorX() {
+        return cursorX;
+    }
+
+    public float getCursorY() {
+        return cursorY;
+    }
+
+    public int getWindowWidth() {
+        return windowWidth;
+    }
+
+    public int getWindowHeight() {
+        return windowHeight;
+    }
+
+    /**
+     * Returns the total x scroll since the input was made.
+     */
+    public double getScrollX() {
+        return scrollX;
+    }
+
+    /**
+     * Returns the total y scroll since the input was made.
+     */
+    public double getScrollY() {
+        return scrollY;
+    }
+
+    /**
+     * Removes the callbacks from the window and frees them, so events polled
+     * afterwards are not sent to freed callbacks. Call it before the window is
+     * destroyed. Not needed if glfwFreeCallbacks is called on the window.
+     * Does nothing if already freed.
+     */
+    public void free() {
+        if (keyCallback == null) {
+            return;
+        }
+        glfwSetKeyCallback(window, null);
+        glfwSetCursorPosCallback(window, null);
+        glfwSetMouseButtonCallback(window, null);
+        glfwSetScrollCallback(window, null);
+        glfwSetWindowSizeCallback(window, null);
+        keyCallback.free();
+        cursorPosCallback.free();
+        mouseButtonCallback.free();
+        scrollCallback.free();
+        windowSizeCallback.free();
+        keyCallback = null;
+        cursorPosCallback = null;
+        mouseButtonCallback = null;
+        scrollCallback = null;
+        windowSizeCallback = null;
+    }
+}
@@ -5,6 +5,7 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 import java.nio.FloatBuffer;
 
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 /**
  * 4x4 matrix of floats. It is in column major order:
@@ -206,6 +207,32 @@ public final class Matrix4f {
         }
     }
 
+    /**
+     * Writes the matrix in column major order to memory from a frame arena.
+     * 
+     * @return address of the 16 floats, valid until the arena is reset
+     */
+    public long toFrameArena(FrameArena frameArena) {
+        long address = frameArena.malloc(4 * 4 * 4);
+        MemoryUtil.memPutFloat(address, m00);
+        MemoryUtil.memPutFloat(address + 4, m01);
+        MemoryUtil.memPutFloat(address + 8, m02);
+        MemoryUtil.memPutFloat(address + 12, m03);
+        MemoryUtil.memPutFloat(address + 16, m10);
+        MemoryUtil.memPutFloat(address + 20, m11);
+        MemoryUtil.memPutFloat(address + 24, m12);
+        MemoryUtil.memPutFloat(address + 28, m13);
+        MemoryUtil.memPutFloat(address + 32, m20);
+        MemoryUtil.memPutFloat(address + 36, m21);
+        MemoryUtil.memPutFloat(address + 40, m22);
+        MemoryUtil.memPutFloat(address + 44, m23);
+        MemoryUtil.memPutFloat(address + 48, m30);
+        MemoryUtil.memPutFloat(address + 52, m31);
+        MemoryUtil.memPutFloat(address + 56, m32);
+        MemoryUtil.memPutFloat(address + 60, m33);
+        return address;
+    }
+
     public String toString() {
         return m00 + ", " + m10 + ", " + m20 + ", " + m30 + ",\n" 
             + m01 + ", " + m11 + ", " + m21 + ", " + m31 + ",\n"
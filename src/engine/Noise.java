@@ -4,14 +4,45 @@ import java.util.Random;
 
 /**
  * Provides methods for noise.
+ * 
+ * Has a 1D cosine interpolated noise wave and 2D and 3D simplex noise, all
+ * between 0.0f and 1.0f. The fill methods sample a whole grid at once and are
+ * much faster than sampling one value at a time.
  */
 public final class Noise {
     private final int POINTS_COUNT = 1024;
+    // Cosine curve resolution for cosineInterpolate. Must be a power of two.
+    private static final int COSINE_COUNT = 1024;
+    // (1 - cos(t * PI)) / 2 for t from 0 to 1.
+    private static final float[] COSINE_CURVE = new float[COSINE_COUNT + 1];
+    private static final float SKEW_2D = 0.5f * ((float)Math.sqrt(3.0) - 1.0f);
+    private static final float UNSKEW_2D = (3.0f - (float)Math.sqrt(3.0))
+        / 6.0f;
+    private static final float SKEW_3D = 1.0f / 3.0f;
+    private static final float UNSKEW_3D = 1.0f / 6.0f;
+    // Gradients pointing to the edges of a cube.
+    private static final float[] GRADIENTS_X = {1, -1, 1, -1, 1, -1, 1, -1, 0,
+        0, 0, 0};
+    private static final float[] GRADIENTS_Y = {1, 1, -1, -1, 0, 0, 0, 0, 1,
+        -1, 1, -1};
+    private static final float[] GRADIENTS_Z = {0, 0, 0, 0, 1, 1, -1, -1, 1,
+        1, -1, -1};
     private float[] points = new float[POINTS_COUNT];
+    // Shuffled 0-255 twice, so lookups do not need to wrap.
+    private int[] permutation = new int[512];
+    private int[] permutationMod12 = new int[512];
     private int seed;
 
+    static {
+        for (int i = 0; i <= COSINE_COUNT; i++) {
+            COSINE_CURVE[i] = (1.0f - (float)Math.cos(Math.PI * i
+                / COSINE_COUNT)) * 0.5f;
+        }
+    }
+
     /**
-     * Generates a noise wave of values between 0.0f and 1.0f as an array.
+     * Generates a noise wave of values between 0.0f and 1.0f as an array and
+     * the gradient tables for 2D and 3D noise.
      * 
      * @param seed
      */
@@ -21,29 +52,391 @@ public final class Noise {
         for (int i = 0; i < points.length; i++) {
             points[i] = generator.nextFloat();
         }
+
+        for (int i = 0; i < 256; i++) {
+            permutation[i] = i;
+        }
+        for (int i = 255; i > 0; i--) {
+            int j = generator.nextInt(i + 1);
+            int swap = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = swap;
+        }
+        for (int i = 0; i < 512; i++) {
+            permutation[i] = permutation[i & 255];
+            permutationMod12[i] = permutation[i] % 12;
+        }
     }
 
     /**
-     * Cosine interpolates y value from the noise array. To get a frequency and 
-     * amplitude, use as: consineInterpolate(x / frequency) * amplitude.
+     * Cosine interpolates y value from the noise array. To get a frequency and
+     * amplitude, use as: consineInterpolate(x / frequency) * amplitude. The
+     * wave repeats every 1024 units.
      * 
      * @param x x position
      * @return y value of x. Between 0 and 1.
      */
     public float cosineInterpolate(float x) {
-        int aIndex = (int)x;
-        int bIndex = (int)x + 1;
-        // Loop around;
-        if (bIndex == POINTS_COUNT - 1) {
-            aIndex = aIndex % POINTS_COUNT;
-            bIndex = bIndex % POINTS_COUNT;
-        }
-        float xPosition = x - aIndex;
-        float ft = xPosition * (float)Math.PI;
-        float f = (1.0f - (float)Math.cos(ft)) * 0.5f;
+        float floor = (float)Math.floor(x);
+        // Loop around.
+        int aIndex = (int)floor & (POINTS_COUNT - 1);
+        int bIndex = (aIndex + 1) & (POINTS_COUNT - 1);
+        float f = COSINE_CURVE[(int)((x - floor) * COSINE_COUNT)];
         return points[aIndex] * (1.0f - f) + points[bIndex] * f;
     }
 
+    /**
+     * Fills an array with cosine interpolated values.
+     * 
+     * @param out array to fill, at least count long
+     * @param x0 x position of the first value
+     * @param step distance between values
+     * @param count number of values
+     */
+    public void fill(float[] out, float x0, float step, int count) {
+        for (int i = 0; i < count; i++) {
+            out[i] = cosineInterpolate(x0 + i * step);
+        }
+    }
+
+    private static int fastFloor(float x) {
+        int i = (int)x;
+        return x < i ? i - 1 : i;
+    }
+
+    /**
+     * 2D simplex noise between -1 and 1.
+     */
+    private float simplex(float x, float y) {
+        float skew = (x + y) * SKEW_2D;
+        int i = fastFloor(x + skew);
+        int j = fastFloor(y + skew);
+        float unskew = (i + j) * UNSKEW_2D;
+        float x0 = x - (i - unskew);
+        float y0 = y - (j - unskew);
+
+        // Which triangle of the skewed square the point is in.
+        int i1 = x0 > y0 ? 1 : 0;
+        int j1 = 1 - i1;
+
+        float x1 = x0 - i1 + UNSKEW_2D;
+        float y1 = y0 - j1 + UNSKEW_2D;
+        float x2 = x0 - 1.0f + 2.0f * UNSKEW_2D;
+        float y2 = y0 - 1.0f + 2.0f * UNSKEW_2D;
+
+        int ii = i & 255;
+        int jj = j & 255;
+        int g0 = permutationMod12[ii + permutation[jj]];
+        int g1 = permutationMod12[ii + i1 + permutation[jj + j1]];
+        int g2 = permutationMod12[ii + 1 + permutation[jj + 1]];
+
+        float total = 0.0f;
+        float t0 = 0.5f - x0 * x0 - y0 * y0;
+        if (t0 > 0.0f) {
+            t0 *= t0;
+            total += t0 * t0 * (GRADIENTS_X[g0] * x0 + GRADIENTS_Y[g0] * y0);
+        }
+        float t1 = 0.5f - x1 * x1 - y1 * y1;
+        if (t1 > 0.0f) {
+            t1 *= t1;
+            total += t1 * t1 * (GRADIENTS_X[g1] * x1 + GRADIENTS_Y[g1] * y1);
+        }
+        float t2 = 0.5f - x2 * x2 - y2 * y2;
+        if (t2 > 0.0f) {
+            t2 *= t2;
+            total += t2 * t2 * (GRADIENTS_X[g2] * x2 + GRADIENTS_Y[g2] * y2);
+        }
+        return 70.0f * total;
+    }
+
+    /**
+     * 3D simplex noise between -1 and 1.
+     */
+    private float simplex(float x, float y, float z) {
+        float skew = (x + y + z) * SKEW_3D;
+        int i = fastFloor(x + skew);
+        int j = fastFloor(y + skew);
+        int k = fastFloor(z + skew);
+        float unskew = (i + j + k) * UNSKEW_3D;
+        float x0 = x - (i - unskew);
+        float y0 = y - (j - unskew);
+        float z0 = z - (k - unskew);
+
+        // Which of the six tetrahedrons of the skewed cube the point is in.
+        int i1;
+        int j1;
+        int k1;
+        int i2;
+        int j2;
+        int k2;
+        if (x0 >= y0) {
+            if (y0 >= z0) {
+                i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+            }
+            else if (x0 >= z0) {
+                i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 0; k2 = 1;
+            }
+            else {
+                i1 = 0; j1 = 0; k1 = 1; i2 = 1; j2 = 0; k2 = 1;
+            }
+        }
+        else {
+            if (y0 < z0) {
+                i1 = 0; j1 = 0; k1 = 1; i2 = 0; j2 = 1; k2 = 1;
+            }
+            else if (x0 < z0) {
+                i1 = 0; j1 = 1; k1 = 0; i2 = 0; j2 = 1; k2 = 1;
+            }
+            else {
+                i1 = 0; j1 = 1; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+            }
+        }
+
+        float x1 = x0 - i1 + UNSKEW_3D;
+        float y1 = y0 - j1 + UNSKEW_3D;
+        float z1 = z0 - k1 + UNSKEW_3D;
+        float x2 = x0 - i2 + 2.0f * UNSKEW_3D;
+        float y2 = y0 - j2 + 2.0f * UNSKEW_3D;
+        float z2 = z0 - k2 + 2.0f * UNSKEW_3D;
+        float x3 = x0 - 1.0f + 3.0f * UNSKEW_3D;
+        float y3 = y0 - 1.0f + 3.0f * UNSKEW_3D;
+        float z3 = z0 - 1.0f + 3.0f * UNSKEW_3D;
+
+        int ii = i & 255;
+        int jj = j & 255;
+        int kk = k & 255;
+        int g0 = permutationMod12[ii + permutation[jj + permutation[kk]]];
+        int g1 = permutationMod12[ii + i1 + permutation[jj + j1
+            + permutation[kk + k1]]];
+        int g2 = permutationMod12[ii + i2 + permutation[jj + j2
+            + permutation[kk + k2]]];
+        int g3 = permutationMod12[ii + 1 + permutation[jj + 1
+            + permutation[kk + 1]]];
+
+        float total = 0.0f;
+        float t0 = 0.6f - x0 * x0 - y0 * y0 - z0 * z0;
+        if (t0 > 0.0f) {
+            t0 *= t0;
+            total += t0 * t0 * (GRADIENTS_X[g0] * x0 + GRADIENTS_Y[g0] * y0
+                + GRADIENTS_Z[g0] * z0);
+        }
+        float t1 = 0.6f - x1 * x1 - y1 * y1 - z1 * z1;
+        if (t1 > 0.0f) {
+            t1 *= t1;
+            total += t1 * t1 * (GRADIENTS_X[g1] * x1 + GRADIENTS_Y[g1] * y1
+                + GRADIENTS_Z[g1] * z1);
+        }
+        float t2 = 0.6f - x2 * x2 - y2 * y2 - z2 * z2;
+        if (t2 > 0.0f) {
+            t2 *= t2;
+            total += t2 * t2 * (GRADIENTS_X[g2] * x2 + GRADIENTS_Y[g2] * y2
+                + GRADIENTS_Z[g2] * z2);
+        }
+        float t3 = 0.6f - x3 * x3 - y3 * y3 - z3 * z3;
+        if (t3 > 0.0f) {
+            t3 *= t3;
+            total += t3 * t3 * (GRADIENTS_X[g3] * x3 + GRADIENTS_Y[g3] * y3
+                + GRADIENTS_Z[g3] * z3);
+        }
+        return 32.0f * total;
+    }
+
+    /**
+     * Samples 2D simplex noise. Features are about 1 unit wide, so divide the
+     * position by the feature size wanted.
+     * 
+     * @param x x position
+     * @param y y position
+     * @return value between 0 and 1
+     */
+    public float simplexNoise(float x, float y) {
+        return 0.5f + 0.5f * simplex(x, y);
+    }
+
+    /**
+     * Samples 3D simplex noise. Use z as time to animate 2D noise.
+     * 
+     * @param x x position
+     * @param y y position
+     * @param z z position
+     * @return value between 0 and 1
+     */
+    public float simplexNoise(float x, float y, float z) {
+        return 0.5f + 0.5f * simplex(x, y, z);
+    }
+
+    private void checkOctaves(int octaves) {
+        if (octaves <= 0) {
+            throw new RuntimeException("Octaves must be positive.");
+        }
+    }
+
+    /**
+     * Samples fractal Brownian motion, which is octaves of 2D simplex noise
+     * added together with rising frequency and falling amplitude.
+     * 
+     * @param x x position
+     * @param y y position
+     * @param octaves number of layers, at least 1
+     * @param lacunarity frequency multiplier per octave, usually 2
+     * @param gain amplitude multiplier per octave, usually 0.5
+     * @return value between 0 and 1
+     */
+    public float fractalNoise(float x, float y, int octaves, float lacunarity,
+        float gain)
+    {
+        checkOctaves(octaves);
+        float total = 0.0f;
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+        float amplitudeTotal = 0.0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            total += amplitude * simplex(x * frequency, y * frequency);
+            amplitudeTotal += amplitude;
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+        return 0.5f + 0.5f * total / amplitudeTotal;
+    }
+
+    /**
+     * Samples fractal Brownian motion of 3D simplex noise.
+     * 
+     * @param x x position
+     * @param y y position
+     * @param z z position
+     * @param octaves number of layers, at least 1
+     * @param lacunarity frequency multiplier per octave, usually 2
+     * @param gain amplitude multiplier per octave, usually 0.5
+     * @return value between 0 and 1
+     */
+    public float fractalNoise(float x, float y, float z, int octaves,
+        float lacunarity, float gain)
+    {
+        checkOctaves(octaves);
+        float total = 0.0f;
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+        float amplitudeTotal = 0.0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            total += amplitude * simplex(x * frequency, y * frequency,
+                z * frequency);
+            amplitudeTotal += amplitude;
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+        return 0.5f + 0.5f * total / amplitudeTotal;
+    }
+
+    /**
+     * Fills a row major grid with 2D simplex noise.
+     * 
+     * @param out array to fill, at least width * height long
+     * @param x0 x position of the first value
+     * @param y0 y position of the first value
+     * @param step distance between values
+     * @param width values per row
+     * @param height number of rows
+     */
+    public void fill(float[] out, float x0, float y0, float step, int width,
+        int height)
+    {
+        fill(out, x0, y0, step, width, height, 1, 2.0f, 0.5f);
+    }
+
+    /**
+     * Fills a row major grid with fractal 2D simplex noise. Octaves are added
+     * a whole grid at a time, which keeps each pass a simple loop.
+     * 
+     * @param out array to fill, at least width * height long
+     * @param x0 x position of the first value
+     * @param y0 y position of the first value
+     * @param step distance between values
+     * @param width values per row
+     * @param height number of rows
+     * @param octaves number of layers, at least 1
+     * @param lacunarity frequency multiplier per octave, usually 2
+     * @param gain amplitude multiplier per octave, usually 0.5
+     */
+    public void fill(float[] out, float x0, float y0, float step, int width,
+        int height, int octaves, float lacunarity, float gain)
+    {
+        checkOctaves(octaves);
+        int count = width * height;
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.0f;
+        }
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+        float amplitudeTotal = 0.0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            float frequencyStep = step * frequency;
+            for (int row = 0; row < height; row++) {
+                float y = (y0 + row * step) * frequency;
+                float x = x0 * frequency;
+                int offset = row * width;
+                for (int column = 0; column < width; column++) {
+                    out[offset + column] += amplitude * simplex(x
+                        + column * frequencyStep, y);
+                }
+            }
+            amplitudeTotal += amplitude;
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+        float scale = 0.5f / amplitudeTotal;
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.5f + out[i] * scale;
+        }
+    }
+
+    /**
+     * Fills a row major grid with fractal 3D simplex noise at a fixed z.
+     * 
+     * @param out array to fill, at least width * height long
+     * @param x0 x position of the first value
+     * @param y0 y position of the first value
+     * @param z z position of the grid
+     * @param step distance between values
+     * @param width values per row
+     * @param height number of rows
+     * @param octaves number of layers, at least 1
+     * @param lacunarity frequency multiplier per octave, usually 2
+     * @param gain amplitude multiplier per octave, usually 0.5
+     */
+    public void fill(float[] out, float x0, float y0, float z, float step,
+        int width, int height, int octaves, float lacunarity, float gain)
+    {
+        checkOctaves(octaves);
+        int count = width * height;
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.0f;
+        }
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+        float amplitudeTotal = 0.0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            float frequencyStep = step * frequency;
+            float zFrequency = z * frequency;
+            for (int row = 0; row < height; row++) {
+                float y = (y0 + row * step) * frequency;
+                float x = x0 * frequency;
+                int offset = row * width;
+                for (int column = 0; column < width; column++) {
+                    out[offset + column] += amplitude * simplex(x
+                        + column * frequencyStep, y, zFrequency);
+                }
+            }
+            amplitudeTotal += amplitude;
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+        float scale = 0.5f / amplitudeTotal;
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.5f + out[i] * scale;
+        }
+    }
+
     public String toString() {
         String string = "[";
         for (int i = 0; i < points.length; i++) {
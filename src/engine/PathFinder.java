@@ -0,0 +1,360 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds paths over the free tiles of a CollisionGrid, such as a
+ * PhysicsWorld's, on worker threads. Agents move to any of the 8 neighbouring
+ * tiles, but never diagonally past the corner of a solid tile.
+ * 
+ * A few agents with their own goals should use findPathAsync(). Many agents
+ * heading to the same goal should share a flow field from getFlowField(),
+ * which costs about as much as a single search.
+ * 
+ * Searches read the grid while they run. Do not change it until they are
+ * done, and call clearFlowFields() after changing it.
+ */
+public final class PathFinder {
+    private static final int[] X_OFFSETS = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] Y_OFFSETS = {0, 1, 0, -1, 1, 1, -1, -1};
+    private final int STRAIGHT_COST = 10;
+    private final int DIAGONAL_COST = 14;
+    private CollisionGrid grid;
+    private int width;
+    private int height;
+    private ExecutorService workers;
+    // Scratch arrays reused by every search on the same thread.
+    private ThreadLocal<Search> searches;
+    private LinkedHashMap<Integer, CompletableFuture<FlowField>> flowFields;
+
+    /**
+     * Node arrays and open list of one thread's searches. Nodes are only
+     * valid if stamped with the current search, so nothing is cleared
+     * between searches.
+     */
+    private static final class Search {
+        int[] costs;
+        int[] parents;
+        int[] openStamps;
+        int[] closedStamps;
+        int stamp = 0;
+        // Binary min-heap of priority << 32 | node. Nodes are pushed again
+        // when their cost drops instead of being moved, and the stale
+        // entries skipped once closed.
+        long[] heap = new long[256];
+        int heapSize = 0;
+
+        Search(int nodeCount) {
+            costs = new int[nodeCount];
+            parents = new int[nodeCount];
+            openStamps = new int[nodeCount];
+            closedStamps = new int[nodeCount];
+        }
+
+        void begin() {
+            stamp++;
+            if (stamp == 0) {
+                Arrays.fill(openStamps, 0);
+                Arrays.fill(closedStamps, 0);
+                stamp = 1;
+            }
+            heapSize = 0;
+        }
+
+        void push(int priority, int node) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heap.length * 2);
+            }
+            long entry = (long)priority << 32 | node;
+            int i = heapSize;
+            heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (heap[parent] <= entry) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = entry;
+        }
+
+        int pop() {
+            int node = (int)heap[0];
+            heapSize--;
+            long entry = heap[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (entry <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = entry;
+            return node;
+        }
+    }
+
+    /**
+     * Initializes the path finder and starts its worker threads.
+     * 
+     * @param grid tiles to path around. Its size must not change.
+     * @param threads number of worker threads
+     * @param maxCachedFlowFields most flow fields kept for reuse
+     */
+    public PathFinder(CollisionGrid grid, int threads,
+        int maxCachedFlowFields)
+    {
+        this.grid = grid;
+        width = grid.getWidth();
+        height = grid.getHeight();
+        searches = ThreadLocal.withInitial(() -> new Search(width * height));
+        flowFields = new LinkedHashMap<Integer, CompletableFuture<FlowField>>(
+            maxCachedFlowFields * 2, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<Integer, CompletableFuture<FlowField>> eldest)
+            {
+                return size() > maxCachedFlowFields;
+            }
+        };
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "BAS-E path finder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void checkTile(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new RuntimeException("Tile is outside of the grid.");
+        }
+    }
+
+    /**
+     * Returns wether a step from a tile in a direction stays on free tiles
+     * of the grid, without cutting a corner.
+     */
+    private boolean canStep(int x, int y, int direction) {
+        int nextX = x + X_OFFSETS[direction];
+        int nextY = y + Y_OFFSETS[direction];
+        if (nextX < 0 || nextY < 0 || nextX >= width || nextY >= height
+            || grid.isSolid(nextX, nextY))
+        {
+            return false;
+        }
+        return direction < 4 || !grid.isSolid(nextX, y)
+            && !grid.isSolid(x, nextY);
+    }
+
+    /**
+     * Returns the octile distance, which never overestimates the cost left.
+     */
+    private int estimate(int x, int y, int goalX, int goalY) {
+        int xDistance = Math.abs(goalX - x);
+        int yDistance = Math.abs(goalY - y);
+        return STRAIGHT_COST * Math.max(xDistance, yDistance)
+            + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(xDistance, yDistance);
+    }
+
+    /**
+     * Finds the shortest path between two tiles with A* on the calling
+     * thread.
+     * 
+     * @param startX x position in tiles to start from
+     * @param startY y position in tiles to start from
+     * @param goalX x position in tiles to go to
+     * @param goalY y position in tiles to go to
+     * @return x and y positions in tiles of every tile on the path, start and
+     *     goal included, as {x0, y0, x1, y1, ...}, or null if there is none
+     */
+    public int[] findPath(int startX, int startY, int goalX, int goalY) {
+        checkTile(startX, startY);
+        checkTile(goalX, goalY);
+        if (grid.isSolid(startX, startY) || grid.isSolid(goalX, goalY)) {
+            return null;
+        }
+        Search search = searches.get();
+        search.begin();
+        int stamp = search.stamp;
+        int start = startY * width + startX;
+        int goal = goalY * width + goalX;
+        search.costs[start] = 0;
+        search.parents[start] = -1;
+        search.openStamps[start] = stamp;
+        search.push(estimate(startX, startY, goalX, goalY), start);
+
+        while (search.heapSize > 0) {
+            int node = search.pop();
+            if (search.closedStamps[node] == stamp) {
+                continue;
+            }
+            if (node == goal) {
+                return tracePath(search, goal);
+            }
+            search.closedStamps[node] = stamp;
+            int x = node % width;
+            int y = node / width;
+            for (int i = 0; i < 8; i++) {
+                if (!canStep(x, y, i)) {
+                    continue;
+                }
+                int nextX = x + X_OFFSETS[i];
+                int nextY = y + Y_OFFSETS[i];
+                int next = nextY * width + nextX;
+                if (search.closedStamps[next] == stamp) {
+                    continue;
+                }
+                int cost = search.costs[node]
+                    + (i < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (search.openStamps[next] != stamp
+                    || cost < search.costs[next])
+                {
+                    search.openStamps[next] = stamp;
+                    search.costs[next] = cost;
+                    search.parents[next] = node;
+                    search.push(cost + estimate(nextX, nextY, goalX, goalY),
+                        next);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int[] tracePath(Search search, int goal) {
+        int length = 0;
+        for (int node = goal; node != -1; node = search.parents[node]) {
+            length++;
+        }
+        int[] path = new int[length * 2];
+        int i = path.length;
+        for (int node = goal; node != -1; node = search.parents[node]) {
+            i -= 2;
+            path[i] = node % width;
+            path[i + 1] = node / width;
+        }
+        return path;
+    }
+
+    /**
+     * Finds the shortest path between two tiles on a worker thread.
+     * 
+     * @see #findPath(int, int, int, int)
+     */
+    public CompletableFuture<int[]> findPathAsync(int startX, int startY,
+        int goalX, int goalY)
+    {
+        checkTile(startX, startY);
+        checkTile(goalX, goalY);
+        return CompletableFuture.supplyAsync(
+            () -> findPath(startX, startY, goalX, goalY), workers);
+    }
+
+    /**
+     * Makes a flow field toward a tile with a Dijkstra search out from it,
+     * on the calling thread.
+     * 
+     * @param goalX x position in tiles to go to
+     * @param goalY y position in tiles to go to
+     */
+    public FlowField createFlowField(int goalX, int goalY) {
+        checkTile(goalX, goalY);
+        int[] costs = new int[width * height];
+        byte[] directions = new byte[width * height];
+        Arrays.fill(costs, -1);
+        Arrays.fill(directions, (byte)-1);
+        if (grid.isSolid(goalX, goalY)) {
+            return new FlowField(width, height, goalX, goalY, costs,
+                directions);
+        }
+
+        Search search = searches.get();
+        search.begin();
+        int stamp = search.stamp;
+        int goal = goalY * width + goalX;
+        costs[goal] = 0;
+        search.push(0, goal);
+
+        while (search.heapSize > 0) {
+            int node = search.pop();
+            if (search.closedStamps[node] == stamp) {
+                continue;
+            }
+            search.closedStamps[node] = stamp;
+            int x = node % width;
+            int y = node / width;
+            for (int i = 0; i < 8; i++) {
+                // Steps are allowed both ways, so stepping out from the goal
+                // finds the tiles that can step in.
+                if (!canStep(x, y, i)) {
+                    continue;
+                }
+                int next = (y + Y_OFFSETS[i]) * width + x + X_OFFSETS[i];
+                if (search.closedStamps[next] == stamp) {
+                    continue;
+                }
+                int cost = costs[node]
+                    + (i < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (costs[next] < 0 || cost < costs[next]) {
+                    costs[next] = cost;
+                    // Points back the way the search came.
+                    directions[next] = (byte)(i < 4 ? (i + 2) & 3
+                        : 4 + ((i - 2) & 3));
+                    search.push(cost, next);
+                }
+            }
+        }
+        return new FlowField(width, height, goalX, goalY, costs, directions);
+    }
+
+    /**
+     * Returns the flow field toward a tile, made on a worker thread the first
+     * time it is asked for and shared after that.
+     * 
+     * @param goalX x position in tiles to go to
+     * @param goalY y position in tiles to go to
+     */
+    public CompletableFuture<FlowField> getFlowField(int goalX, int goalY) {
+        checkTile(goalX, goalY);
+        synchronized (flowFields) {
+            return flowFields.computeIfAbsent(goalY * width + goalX,
+                goal -> CompletableFuture.supplyAsync(
+                () -> createFlowField(goalX, goalY), workers));
+        }
+    }
+
+    /**
+     * Forgets every cached flow field, so they are made again from the
+     * current grid. Fields already handed out are unchanged.
+     */
+    public void clearFlowFields() {
+        synchronized (flowFields) {
+            flowFields.clear();
+        }
+    }
+
+    public CollisionGrid getCollisionGrid() {
+        return grid;
+    }
+
+    /**
+     * Stops the worker threads. Searches not done yet are dropped.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -1,27 +1,42 @@
 package engine;
 
+import java.nio.ByteBuffer;
+
 /**
  * Physics simulator.
  */
 public final class PhysicsEntity {
-    private Vector2f position;
+    private Vector2f position = new Vector2f(0.0f, 0.0f);
     private Vector2f velocity = new Vector2f(0.0f, 0.0f);
     private Vector2f acceleration = new Vector2f(0.0f, 9.81f);;
-    private Vector2f size;
+    private Vector2f size = new Vector2f(0.0f, 0.0f);
+    // When the last wall clock update happened.
     private long lastEpoch = System.nanoTime();
-    private float deltaTime = 0.0f;
     private final float PIXELS_PER_METER = 64.0f;
     // Wether to do movement or not. Still collidable to others.
     private boolean doKinematics;
     private boolean collidable;
     private static int nextID;
-    // Used to prevent collisions with yourself.
+    // Bytes writeShape() writes.
+    static final int SHAPE_BYTES = 4 * 3 + 1;
+    // Identifies the entity in snapshots. The handle for world entities.
     private int ID;
     // Used to prevent jitter against surfaces.
     private boolean collidingTop = false;
     private boolean collidingRight = false;
     private boolean collidingBottom = false;
     private boolean collidingLeft = false;
+    // Used to stop simulating entities that have come to rest.
+    private final float SLEEP_VELOCITY = 0.05f;
+    private final int SLEEP_TICKS = 60;
+    private int restingTicks = 0;
+    private boolean sleeping = false;
+    // Wether to sweep movement against others to prevent tunneling.
+    private boolean fast = false;
+    // Wether overlaps are only reported as contacts and never resolved.
+    private boolean trigger = false;
+    // Result of sweep() when nothing is hit.
+    private final long NO_HIT = (long)Float.floatToIntBits(1.0f) << 2;
 
     /**
      * Initializes an entity. One meter is equivalent to whatever value 
@@ -38,12 +53,40 @@ public final class PhysicsEntity {
     public PhysicsEntity(float xPosition, float yPosition, float width, 
         float height, boolean doKinematics, boolean collidable) 
     {
-        position = new Vector2f(xPosition, yPosition);
-        size = new Vector2f(width, height);
+        reset(xPosition, yPosition, width, height, doKinematics, collidable, 
+            nextID);
+        nextID++;
+    }
+
+    /**
+     * Initializes an entity to be reset by a PhysicsWorld.
+     */
+    PhysicsEntity() {
+    }
+
+    /**
+     * Puts the entity back to the state of a new one, so pooled entities can 
+     * be reused.
+     */
+    void reset(float xPosition, float yPosition, float width, float height, 
+        boolean doKinematics, boolean collidable, int ID) 
+    {
+        position.set(xPosition, yPosition);
+        velocity.set(0.0f, 0.0f);
+        acceleration.set(0.0f, 9.81f);
+        size.set(width, height);
+        lastEpoch = System.nanoTime();
         this.doKinematics = doKinematics;
         this.collidable = collidable;
-        ID = nextID;
-        nextID++;
+        this.ID = ID;
+        collidingTop = false;
+        collidingRight = false;
+        collidingBottom = false;
+        collidingLeft = false;
+        restingTicks = 0;
+        sleeping = false;
+        fast = false;
+        trigger = false;
     }
 
     private boolean checkOverlapping(Vector2f position, Vector2f size) {
@@ -53,18 +96,170 @@ public final class PhysicsEntity {
             && this.position.getY() + this.size.getY() >= position.getY();
     }
 
-    private void resolveCollisions(PhysicsEntity[] physicsEntities) {
-        collidingTop = false;
-        collidingRight = false;
-        collidingBottom = false;
-        collidingLeft = false;
-        for (int i = 0; i < physicsEntities.length; i++) {
-            if (!physicsEntities[i].collidable || ID == physicsEntities[i].ID) {
+    /**
+     * Finds when a box moving by (xDistance, yDistance) first touches another 
+     * box. Boxes already overlapping are not hits, and neither are boxes 
+     * only touching unless moving into each other. Those hit at time 0, which 
+     * is what stops a resting box from sinking into what it rests on.
+     * 
+     * @return the bits of the time of impact, between 0 and 1, shifted left 
+     *     by 2, with the axis hit in the low 2 bits, 1 for x and 2 for y. 
+     *     NO_HIT if there is no hit. Earlier hits are smaller.
+     */
+    private long sweep(float xDistance, float yDistance, float otherX, 
+        float otherY, float otherWidth, float otherHeight) 
+    {
+        float xEntry;
+        float xExit;
+        if (xDistance > 0.0f) {
+            xEntry = (otherX - (position.getX() + size.getX())) / xDistance;
+            xExit = (otherX + otherWidth - position.getX()) / xDistance;
+        }
+        else if (xDistance < 0.0f) {
+            xEntry = (otherX + otherWidth - position.getX()) / xDistance;
+            xExit = (otherX - (position.getX() + size.getX())) / xDistance;
+        }
+        else if (position.getX() < otherX + otherWidth 
+            && position.getX() + size.getX() > otherX) 
+        {
+            xEntry = Float.NEGATIVE_INFINITY;
+            xExit = Float.POSITIVE_INFINITY;
+        }
+        else {
+            return NO_HIT;
+        }
+
+        float yEntry;
+        float yExit;
+        if (yDistance > 0.0f) {
+            yEntry = (otherY - (position.getY() + size.getY())) / yDistance;
+            yExit = (otherY + otherHeight - position.getY()) / yDistance;
+        }
+        else if (yDistance < 0.0f) {
+            yEntry = (otherY + otherHeight - position.getY()) / yDistance;
+            yExit = (otherY - (position.getY() + size.getY())) / yDistance;
+        }
+        else if (position.getY() < otherY + otherHeight 
+            && position.getY() + size.getY() > otherY) 
+        {
+            yEntry = Float.NEGATIVE_INFINITY;
+            yExit = Float.POSITIVE_INFINITY;
+        }
+        else {
+            return NO_HIT;
+        }
+
+        float entry = Math.max(xEntry, yEntry);
+        float exit = Math.min(xExit, yExit);
+        if (entry > exit || entry < 0.0f || entry >= 1.0f) {
+            return NO_HIT;
+        }
+        // Adding 0 turns -0 into 0, whose bits sort below every other time.
+        return (long)Float.floatToIntBits(entry + 0.0f) << 2 
+            | (xEntry > yEntry ? 1 : 2);
+    }
+
+    /**
+     * Moves by the distance given, stopping at the first surface hit and 
+     * sliding along it for the rest of the step.
+     */
+    private void moveSwept(PhysicsEntity[] physicsEntities, int count, 
+        CollisionGrid grid, float xDistance, float yDistance) 
+    {
+        // Two passes are enough, one hit per axis.
+        for (int pass = 0; pass < 2; pass++) {
+            long hit = NO_HIT;
+            for (int i = 0; i < count; i++) {
+                if (!physicsEntities[i].collidable 
+                    || physicsEntities[i].trigger 
+                    || physicsEntities[i] == this) 
+                {
+                    continue;
+                }
+                long result = sweep(xDistance, yDistance, 
+                    physicsEntities[i].position.getX(), 
+                    physicsEntities[i].position.getY(), 
+                    physicsEntities[i].size.getX(), 
+                    physicsEntities[i].size.getY());
+                // Compares times only, so the first of equal hits is kept.
+                if (result >>> 2 < hit >>> 2) {
+                    hit = result;
+                }
+            }
+            if (grid != null) {
+                // Only tiles within the swept bounds can be hit.
+                float left = position.getX() + Math.min(xDistance, 0.0f);
+                float top = position.getY() + Math.min(yDistance, 0.0f);
+                int startX = Math.max(grid.getTileX(left), 0);
+                int startY = Math.max(grid.getTileY(top), 0);
+                int endX = Math.min(grid.getTileX(left + size.getX() 
+                    + Math.abs(xDistance)), grid.getWidth() - 1);
+                int endY = Math.min(grid.getTileY(top + size.getY() 
+                    + Math.abs(yDistance)), grid.getHeight() - 1);
+                for (int y = startY; y <= endY; y++) {
+                    for (int x = startX; x <= endX; x++) {
+                        if (!grid.isSolid(x, y)) {
+                            continue;
+                        }
+                        long result = sweep(xDistance, yDistance, 
+                            grid.getTileLeft(x), grid.getTileTop(y), 
+                            grid.getTileSize(), grid.getTileSize());
+                        if (result >>> 2 < hit >>> 2) {
+                            hit = result;
+                        }
+                    }
+                }
+            }
+
+            float timeOfImpact = Float.intBitsToFloat((int)(hit >>> 2));
+            int axis = (int)hit & 3;
+            position.add(xDistance * timeOfImpact, yDistance * timeOfImpact);
+            if (axis == 0) {
+                return;
+            }
+            if (axis == 1) {
+                if (xDistance > 0.0f) {
+                    collidingRight = true;
+                }
+                else {
+                    collidingLeft = true;
+                }
+                velocity.setX(0.0f);
+                xDistance = 0.0f;
+                yDistance *= 1.0f - timeOfImpact;
+            }
+            else {
+                if (yDistance > 0.0f) {
+                    collidingBottom = true;
+                }
+                else {
+                    collidingTop = true;
+                }
+                velocity.setY(0.0f);
+                xDistance *= 1.0f - timeOfImpact;
+                yDistance = 0.0f;
+            }
+        }
+    }
+
+    private void resolveCollisions(PhysicsEntity[] physicsEntities, 
+        int count, ContactEvents contactEvents) 
+    {
+        for (int i = 0; i < count; i++) {
+            if (!physicsEntities[i].collidable || physicsEntities[i] == this) {
                 continue;
             }
             if (checkOverlapping(physicsEntities[i].position, 
                 physicsEntities[i].size))
             {
+                // Only a moving body wakes what it touches, otherwise resting 
+                // neighbours would keep waking each other up.
+                if (physicsEntities[i].sleeping && doKinematics 
+                    && restingTicks == 0) 
+                {
+                    physicsEntities[i].wake();
+                }
+
                 Vector2f center = new Vector2f(position.getX() + size.getX() 
                     / 2.0f, position.getY() + size.getY() / 2.0f);
 
@@ -80,6 +275,25 @@ public final class PhysicsEntity {
                     / 2.0f + physicsEntities[i].size.getY() / 2.0f 
                     - Math.abs(center.getY() - otherCenter.getY()));
 
+                boolean isTrigger = trigger || physicsEntities[i].trigger;
+                if (contactEvents != null) {
+                    // The normal points the way this entity is pushed out.
+                    if (depth.getX() < depth.getY()) {
+                        contactEvents.report(ID, physicsEntities[i].ID, 
+                            position.getX() < physicsEntities[i].position
+                            .getX() ? -1.0f : 1.0f, 0.0f, depth.getX(), 
+                            isTrigger);
+                    }
+                    else {
+                        contactEvents.report(ID, physicsEntities[i].ID, 0.0f, 
+                            position.getY() < physicsEntities[i].position
+                            .getY() ? -1.0f : 1.0f, depth.getY(), isTrigger);
+                    }
+                }
+                if (isTrigger) {
+                    continue;
+                }
+
                 if (depth.getX() < depth.getY()) {
                     if (position.getX() < physicsEntities[i].position.getX()) {
                         position.subtract(depth.getX(), 0.0f);
@@ -105,18 +319,144 @@ public final class PhysicsEntity {
     }
 
     /**
-     * Updates position based on velocity and acceleration on a fixed time step 
-     * and resolves collisions if this is collidable.
+     * Pushes out of the solid tiles overlapped. A tile face shared with 
+     * another solid tile is never used, so entities slide across tile seams 
+     * instead of catching on them.
+     */
+    private void resolveGridCollisions(CollisionGrid grid) {
+        float tileSize = grid.getTileSize();
+        int startX = Math.max(grid.getTileX(position.getX()), 0);
+        int startY = Math.max(grid.getTileY(position.getY()), 0);
+        int endX = Math.min(grid.getTileX(position.getX() + size.getX()), 
+            grid.getWidth() - 1);
+        int endY = Math.min(grid.getTileY(position.getY() + size.getY()), 
+            grid.getHeight() - 1);
+        for (int y = startY; y <= endY; y++) {
+            for (int x = startX; x <= endX; x++) {
+                if (!grid.isSolid(x, y)) {
+                    continue;
+                }
+                float tileLeft = grid.getTileLeft(x);
+                float tileTop = grid.getTileTop(y);
+                float right = position.getX() + size.getX();
+                float bottom = position.getY() + size.getY();
+                float xOverlap = Math.min(right, tileLeft + tileSize) 
+                    - Math.max(position.getX(), tileLeft);
+                float yOverlap = Math.min(bottom, tileTop + tileSize) 
+                    - Math.max(position.getY(), tileTop);
+                // Already pushed away or only touching a corner.
+                if (xOverlap < 0.0f || yOverlap < 0.0f 
+                    || (xOverlap == 0.0f && yOverlap == 0.0f)) 
+                {
+                    continue;
+                }
+
+                // 0 none, 1 up, 2 down, 3 left, 4 right.
+                int direction = 0;
+                float depth = Float.POSITIVE_INFINITY;
+                if (!grid.isSolid(x, y - 1) && bottom - tileTop < depth) {
+                    direction = 1;
+                    depth = bottom - tileTop;
+                }
+                if (!grid.isSolid(x, y + 1) 
+                    && tileTop + tileSize - position.getY() < depth) 
+                {
+                    direction = 2;
+                    depth = tileTop + tileSize - position.getY();
+                }
+                if (!grid.isSolid(x - 1, y) && right - tileLeft < depth) {
+                    direction = 3;
+                    depth = right - tileLeft;
+                }
+                if (!grid.isSolid(x + 1, y) 
+                    && tileLeft + tileSize - position.getX() < depth) 
+                {
+                    direction = 4;
+                    depth = tileLeft + tileSize - position.getX();
+                }
+
+                if (direction == 1) {
+                    position.subtract(0.0f, depth);
+                    collidingBottom = true;
+                }
+                else if (direction == 2) {
+                    position.add(0.0f, depth);
+                    collidingTop = true;
+                }
+                else if (direction == 3) {
+                    position.subtract(depth, 0.0f);
+                    collidingRight = true;
+                }
+                else if (direction == 4) {
+                    position.add(depth, 0.0f);
+                    collidingLeft = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates position based on velocity and acceleration over the time since 
+     * the last update and resolves collisions if this is collidable.
+     * 
+     * Entities that stay under SLEEP_VELOCITY for SLEEP_TICKS updates fall 
+     * asleep and are skipped until woken by a moving entity touching them or 
+     * by wake().
+     * 
+     * Fast entities sweep their movement against the others first, so they 
+     * stop at surfaces instead of passing through them in a single step.
      * 
      * @param physicsEntities entities to check against. If itself is included 
      *     it is ignored.
      */
     public void update(PhysicsEntity[] physicsEntities) {
-        if (doKinematics) {
-            long currentEpoch = System.nanoTime();
-            deltaTime = (currentEpoch - lastEpoch) / 1000000000.0f;
-            lastEpoch = currentEpoch;
+        update(physicsEntities, null);
+    }
+
+    /**
+     * Updates like update(physicsEntities), but also collides with the solid 
+     * tiles of a grid.
+     * 
+     * @param physicsEntities entities to check against. If itself is included 
+     *     it is ignored.
+     * @param grid static tiles to check against, or null for none
+     */
+    public void update(PhysicsEntity[] physicsEntities, CollisionGrid grid) {
+        long currentEpoch = System.nanoTime();
+        float deltaTime = (currentEpoch - lastEpoch) / 1000000000.0f;
+        lastEpoch = currentEpoch;
+        update(physicsEntities, physicsEntities.length, grid, null, 
+            deltaTime);
+    }
+
+    /**
+     * Updates like update(physicsEntities, grid), but on a fixed time step 
+     * instead of the wall clock, so the same state stepped the same way 
+     * always ends up the same.
+     * 
+     * @param physicsEntities entities to check against. If itself is included 
+     *     it is ignored.
+     * @param grid static tiles to check against, or null for none
+     * @param deltaTime length of the step in seconds
+     */
+    public void update(PhysicsEntity[] physicsEntities, CollisionGrid grid, 
+        float deltaTime) 
+    {
+        update(physicsEntities, physicsEntities.length, grid, null, 
+            deltaTime);
+    }
 
+    /**
+     * Updates against the first count entities of the array and reports 
+     * overlaps to contactEvents if it is not null.
+     */
+    void update(PhysicsEntity[] physicsEntities, int count, 
+        CollisionGrid grid, ContactEvents contactEvents, float deltaTime) 
+    {
+        if (sleeping) {
+            return;
+        }
+        if (doKinematics) {
             velocity.add(acceleration.getX() * deltaTime, 
                 acceleration.getY() * deltaTime);
 
@@ -132,23 +472,166 @@ public final class PhysicsEntity {
             if (collidingLeft && velocity.getX() < 0) {
                 velocity.setX(0.0f);
             }
+        }
+        collidingTop = false;
+        collidingRight = false;
+        collidingBottom = false;
+        collidingLeft = false;
+        if (doKinematics) {
+            float xDistance = velocity.getX() * deltaTime * PIXELS_PER_METER;
+            float yDistance = velocity.getY() * deltaTime * PIXELS_PER_METER;
+            if (fast && collidable && !trigger) {
+                moveSwept(physicsEntities, count, grid, xDistance, 
+                    yDistance);
+            }
+            else {
+                position.add(xDistance, yDistance);
+            }
 
-            position.add(velocity.getX() * deltaTime * PIXELS_PER_METER, 
-                velocity.getY() * deltaTime * PIXELS_PER_METER);
+            if (velocity.getX() * velocity.getX() + velocity.getY() 
+                * velocity.getY() < SLEEP_VELOCITY * SLEEP_VELOCITY)
+            {
+                restingTicks++;
+            }
+            else {
+                restingTicks = 0;
+            }
         }
         if (this.collidable) {
-            resolveCollisions(physicsEntities);
+            resolveCollisions(physicsEntities, count, contactEvents);
+            if (grid != null) {
+                resolveGridCollisions(grid);
+            }
+        }
+        if (doKinematics && restingTicks >= SLEEP_TICKS) {
+            sleeping = true;
+        }
+    }
+
+    /**
+     * Wakes the entity up so it is simulated again on the next update.
+     */
+    public void wake() {
+        if (sleeping) {
+            sleeping = false;
+            // Time spent asleep should not be integrated.
+            lastEpoch = System.nanoTime();
+        }
+        restingTicks = 0;
+    }
+
+    /**
+     * Returns wether the two entities overlap or touch.
+     */
+    boolean touches(PhysicsEntity otherEntity) {
+        return checkOverlapping(otherEntity.position, otherEntity.size);
+    }
+
+    public boolean isCollidable() {
+        return collidable;
+    }
+
+    /**
+     * Writes the simulated state to a buffer. See PhysicsSnapshot for the 
+     * layout.
+     */
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(ID);
+        buffer.putFloat(position.getX());
+        buffer.putFloat(position.getY());
+        buffer.putFloat(velocity.getX());
+        buffer.putFloat(velocity.getY());
+        buffer.put((byte)((collidingTop ? 1 : 0) | (collidingRight ? 2 : 0) 
+            | (collidingBottom ? 4 : 0) | (collidingLeft ? 8 : 0) 
+            | (sleeping ? 16 : 0) | (collidable ? 32 : 0) | (fast ? 64 : 0) 
+            | (trigger ? 128 : 0)));
+        buffer.putInt(restingTicks);
+    }
+
+    /**
+     * Reads the simulated state written by writeState(), minus the ID.
+     */
+    void readState(ByteBuffer buffer) {
+        position.set(buffer.getFloat(), buffer.getFloat());
+        velocity.set(buffer.getFloat(), buffer.getFloat());
+        byte flags = buffer.get();
+        collidingTop = (flags & 1) != 0;
+        collidingRight = (flags & 2) != 0;
+        collidingBottom = (flags & 4) != 0;
+        collidingLeft = (flags & 8) != 0;
+        if (sleeping && (flags & 16) == 0) {
+            wake();
         }
+        sleeping = (flags & 16) != 0;
+        collidable = (flags & 32) != 0;
+        fast = (flags & 64) != 0;
+        trigger = (flags & 128) != 0;
+        restingTicks = buffer.getInt();
+    }
+
+    /**
+     * Writes the ID, size and wether the entity moves, which a PhysicsWorld 
+     * saves so reused entities can be rolled back.
+     */
+    void writeShape(ByteBuffer buffer) {
+        buffer.putInt(ID);
+        buffer.putFloat(size.getX());
+        buffer.putFloat(size.getY());
+        buffer.put((byte)(doKinematics ? 1 : 0));
+    }
+
+    /**
+     * Reads what writeShape() wrote.
+     */
+    void readShape(ByteBuffer buffer) {
+        ID = buffer.getInt();
+        size.set(buffer.getFloat(), buffer.getFloat());
+        doKinematics = buffer.get() != 0;
+    }
+
+    static int getNextID() {
+        return nextID;
+    }
+
+    static void setNextID(int nextID) {
+        PhysicsEntity.nextID = nextID;
+    }
+
+    public int getID() {
+        return ID;
+    }
+
+    public boolean isSleeping() {
+        return sleeping;
     }
 
     public Vector2f getPosition() {
         return position;
     }
 
+    public Vector2f getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the velocity in meters per second. Call wake() after changing it
+     * directly, or use setVelocity() instead.
+     */
     public Vector2f getVelocity() {
         return velocity;
     }
 
+    /**
+     * Sets the velocity in meters per second and wakes the entity up.
+     * 
+     * @param x x velocity
+     * @param y y velocity
+     */
+    public void setVelocity(float x, float y) {
+        velocity.set(x, y);
+        wake();
+    }
+
     /**
      * Returns wether this entity is colliding with something on the bottom.
      */
@@ -159,4 +642,21 @@ public final class PhysicsEntity {
     public void setCollidable(boolean collidable) {
         this.collidable = collidable;
     }
+
+    /**
+     * Sets wether the entity is a trigger. Triggers still report contacts in 
+     * a PhysicsWorld but never push or get pushed by other entities.
+     */
+    public void setTrigger(boolean trigger) {
+        this.trigger = trigger;
+    }
+
+    /**
+     * Sets wether movement is swept against other entities. Costs an extra 
+     * pass over the entities, so use it for small or quick entities that 
+     * could otherwise pass through thin ones in one step.
+     */
+    public void setFast(boolean fast) {
+        this.fast = fast;
+    }
 }
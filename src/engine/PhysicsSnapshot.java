@@ -0,0 +1,272 @@
+package engine;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary copy of the physics state of a set of entities, for rollback and
+ * replays. The buffer is allocated once and reused by every save, and only
+ * grows to fit a world that has outgrown it.
+ * 
+ * The layout is a header of the next entity ID and the entity count, then per
+ * entity: ID, x and y position, x and y velocity, a byte of colliding,
+ * sleeping, collidable, fast and trigger flags and the resting tick count.
+ * A snapshot of a PhysicsWorld goes on with the world's slot count and free
+ * slot count, the generation of every slot, the free slots in order, then
+ * ID, width, height and a kinematics byte per entity, then the count and keys
+ * of the pairs touching.
+ * 
+ * Restoring and stepping again with the same fixed time step, through
+ * PhysicsWorld.step(deltaTime), gives exactly the same state as the first
+ * time. Wall clock updates do not rewind time, so restored entities continue
+ * from whenever they were last updated.
+ */
+public final class PhysicsSnapshot {
+    private final int HEADER_BYTES = 4 * 2;
+    private final int ENTITY_BYTES = 4 * 6 + 1;
+    // Offsets of the fields after the ID, in the order of the delta mask bits.
+    private final int[] FIELD_OFFSETS = {4, 8, 12, 16, 20, 21};
+    private final int[] FIELD_SIZES = {4, 4, 4, 4, 1, 4};
+    // Delta mask for an entity that is written in full.
+    private final int FULL_ENTITY = 0x80;
+    private ByteBuffer buffer;
+
+    /**
+     * Allocates a snapshot.
+     * 
+     * @param maxEntities largest entity count that will be saved
+     */
+    public PhysicsSnapshot(int maxEntities) {
+        buffer = ByteBuffer.allocate(HEADER_BYTES + maxEntities * ENTITY_BYTES);
+    }
+
+    /**
+     * Copies the state of the entities and the next entity ID.
+     * 
+     * @param physicsEntities entities to save
+     */
+    public void save(PhysicsEntity[] physicsEntities) {
+        save(physicsEntities, physicsEntities.length);
+    }
+
+    /**
+     * Copies the state of the first count entities and the next entity ID.
+     * 
+     * @param physicsEntities entities to save
+     * @param count how many entities from the start of the array to save
+     */
+    public void save(PhysicsEntity[] physicsEntities, int count) {
+        if (HEADER_BYTES + count * ENTITY_BYTES > buffer.capacity()) {
+            throw new RuntimeException("Too many entities for the snapshot.");
+        }
+        buffer.clear();
+        buffer.putInt(PhysicsEntity.getNextID());
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            physicsEntities[i].writeState(buffer);
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Copies a whole world: its entities, its slots, so entities created or
+     * destroyed since are undone by restore(PhysicsWorld), and the pairs
+     * touching, so contact events after a restore are the same as the first
+     * time. Grows the buffer if the world has outgrown it.
+     * 
+     * @param world world to save
+     */
+    public void save(PhysicsWorld world) {
+        int count = world.getCount();
+        int entityBytes = HEADER_BYTES + count * ENTITY_BYTES;
+        int size = entityBytes + world.getStateSize();
+        if (size > buffer.capacity()) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        save(world.getEntities(), count);
+        buffer.limit(size);
+        buffer.position(entityBytes);
+        world.writeState(buffer);
+        buffer.flip();
+    }
+
+    /**
+     * Puts a world back to the state saved by save(PhysicsWorld). Handles of
+     * entities created since stop being alive and handles of entities
+     * destroyed since are alive again. Queued contact events are discarded.
+     * 
+     * @param world the world saved
+     */
+    public void restore(PhysicsWorld world) {
+        int count = getCount();
+        int entityBytes = HEADER_BYTES + count * ENTITY_BYTES;
+        if (buffer.limit() == entityBytes) {
+            throw new RuntimeException("Snapshot is not of a world.");
+        }
+        buffer.position(entityBytes);
+        world.readState(buffer, count);
+        buffer.rewind();
+        restore(world.getEntities(), count);
+    }
+
+    /**
+     * Puts the entities and the next entity ID back to the saved state.
+     * 
+     * @param physicsEntities the same entities, in the same order, as saved
+     */
+    public void restore(PhysicsEntity[] physicsEntities) {
+        restore(physicsEntities, physicsEntities.length);
+    }
+
+    /**
+     * Puts the first count entities and the next entity ID back to the saved
+     * state.
+     * 
+     * @param physicsEntities the same entities, in the same order, as saved
+     * @param count how many entities from the start of the array to restore
+     */
+    public void restore(PhysicsEntity[] physicsEntities, int count) {
+        if (buffer.getInt(4) != count) {
+            throw new RuntimeException("Snapshot does not match the entities.");
+        }
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(HEADER_BYTES + i * ENTITY_BYTES)
+                != physicsEntities[i].getID())
+            {
+                throw new RuntimeException(
+                    "Snapshot does not match the entities.");
+            }
+        }
+        PhysicsEntity.setNextID(buffer.getInt(0));
+        buffer.position(HEADER_BYTES);
+        for (int i = 0; i < count; i++) {
+            // Skips the ID.
+            buffer.position(buffer.position() + 4);
+            physicsEntities[i].readState(buffer);
+        }
+        buffer.rewind();
+    }
+
+    /**
+     * Writes only what changed since a previous snapshot. Each entity takes a
+     * mask byte and its changed fields, so entities at rest cost one byte.
+     * 
+     * @param previous snapshot the receiver already has
+     * @param out buffer to write to, starting at its position
+     */
+    public void writeDelta(PhysicsSnapshot previous, ByteBuffer out) {
+        ByteBuffer base = previous.buffer;
+        int count = getCount();
+        int baseCount = previous.getCount();
+        try {
+            out.putInt(buffer.getInt(0));
+            out.putInt(count);
+            for (int i = 0; i < count; i++) {
+                int offset = HEADER_BYTES + i * ENTITY_BYTES;
+                if (i >= baseCount
+                    || buffer.getInt(offset) != base.getInt(offset))
+                {
+                    out.put((byte)FULL_ENTITY);
+                    for (int j = 0; j < ENTITY_BYTES; j++) {
+                        out.put(buffer.get(offset + j));
+                    }
+                    continue;
+                }
+
+                int mask = 0;
+                for (int field = 0; field < FIELD_OFFSETS.length; field++) {
+                    if (!fieldEquals(base, offset + FIELD_OFFSETS[field],
+                        FIELD_SIZES[field]))
+                    {
+                        mask |= 1 << field;
+                    }
+                }
+                out.put((byte)mask);
+                for (int field = 0; field < FIELD_OFFSETS.length; field++) {
+                    if ((mask & 1 << field) != 0) {
+                        int fieldOffset = offset + FIELD_OFFSETS[field];
+                        for (int j = 0; j < FIELD_SIZES[field]; j++) {
+                            out.put(buffer.get(fieldOffset + j));
+                        }
+                    }
+                }
+            }
+        } catch (BufferOverflowException e) {
+            throw new RuntimeException("Delta does not fit in the buffer.");
+        }
+    }
+
+    /**
+     * Rebuilds this snapshot from a previous one and a delta written by
+     * writeDelta().
+     * 
+     * @param previous the snapshot the delta was written against
+     * @param in buffer to read the delta from, starting at its position
+     */
+    public void readDelta(PhysicsSnapshot previous, ByteBuffer in) {
+        ByteBuffer base = previous.buffer;
+        int nextID = in.getInt();
+        int count = in.getInt();
+        if (HEADER_BYTES + count * ENTITY_BYTES > buffer.capacity()) {
+            throw new RuntimeException("Too many entities for the snapshot.");
+        }
+        buffer.clear();
+        buffer.putInt(0, nextID);
+        buffer.putInt(4, count);
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_BYTES + i * ENTITY_BYTES;
+            int mask = in.get() & 0xFF;
+            if (mask == FULL_ENTITY) {
+                for (int j = 0; j < ENTITY_BYTES; j++) {
+                    buffer.put(offset + j, in.get());
+                }
+                continue;
+            }
+
+            buffer.putInt(offset, base.getInt(offset));
+            for (int field = 0; field < FIELD_OFFSETS.length; field++) {
+                int fieldOffset = offset + FIELD_OFFSETS[field];
+                boolean changed = (mask & 1 << field) != 0;
+                for (int j = 0; j < FIELD_SIZES[field]; j++) {
+                    buffer.put(fieldOffset + j,
+                        changed ? in.get() : base.get(fieldOffset + j));
+                }
+            }
+        }
+        buffer.limit(HEADER_BYTES + count * ENTITY_BYTES);
+    }
+
+    private boolean fieldEquals(ByteBuffer base, int offset, int size) {
+        if (size == 4) {
+            return buffer.getInt(offset) == base.getInt(offset);
+        }
+        return buffer.get(offset) == base.get(offset);
+    }
+
+    /**
+     * Copies another snapshot into this one.
+     */
+    public void set(PhysicsSnapshot otherSnapshot) {
+        if (otherSnapshot.buffer.limit() > buffer.capacity()) {
+            throw new RuntimeException("Too many entities for the snapshot.");
+        }
+        buffer.clear();
+        buffer.put(otherSnapshot.buffer.duplicate());
+        buffer.flip();
+    }
+
+    /**
+     * Returns the number of entities saved.
+     */
+    public int getCount() {
+        return buffer.limit() < HEADER_BYTES ? 0 : buffer.getInt(4);
+    }
+
+    /**
+     * Returns the saved bytes, from position 0 to the limit. Changing it
+     * changes the snapshot.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+}
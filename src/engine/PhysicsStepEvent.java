@@ -0,0 +1,36 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a PhysicsWorld.step(). Off unless a recording 
+ * enables engine.PhysicsStep.
+ */
+@Name("engine.PhysicsStep")
+@Label("Physics Step")
+@Category({"BAS-E", "Physics"})
+@Description("Entities updated and collision pairs tested by a world step")
+@Enabled(false)
+@StackTrace(false)
+final class PhysicsStepEvent extends Event {
+    @Label("Bodies")
+    int bodies;
+
+    @Label("Awake Bodies")
+    int awakeBodies;
+
+    @Label("Pairs Tested")
+    @Description("Entity pairs checked for overlap by awake collidable "
+        + "entities")
+    long pairsTested;
+
+    @Label("Contacts")
+    @Description("Overlapping pairs found")
+    int contacts;
+}
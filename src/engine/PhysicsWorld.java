@@ -0,0 +1,335 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Owns and steps a set of physics entities. Entities are created and 
+ * destroyed through the world and referred to by handles. Destroyed entities 
+ * are kept for reuse, so spawning and despawning does not allocate once the 
+ * world has grown to its peak size.
+ * 
+ * A handle is a slot index in the low INDEX_BITS bits and a generation count 
+ * in the rest. The generation goes up every time the slot is freed, so old 
+ * handles to a reused slot are no longer alive. A slot whose generation has 
+ * gone through every value is never reused, so no old handle comes alive 
+ * again.
+ * 
+ * PhysicsSnapshot.save(PhysicsWorld) saves the whole world, so restoring it 
+ * also undoes creates and destroys.
+ */
+public final class PhysicsWorld {
+    private final int INDEX_BITS = 20;
+    private final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private final int GENERATION_MASK = (1 << (32 - INDEX_BITS)) - 1;
+    // Live entities packed at the start of the array, in no particular order.
+    private PhysicsEntity[] entities;
+    private int count = 0;
+    // Per slot.
+    private PhysicsEntity[] slotEntities;
+    private int[] generations;
+    private int[] denseIndices;
+    private int slotCount = 0;
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private CollisionGrid grid;
+    private ContactEvents contactEvents;
+    // When the last wall clock step happened.
+    private long lastEpoch = System.nanoTime();
+
+    /**
+     * Initializes an empty world with room for 4096 contact events per step.
+     * 
+     * @param capacity how many entities to make room for. The world grows 
+     *     past this if needed.
+     */
+    public PhysicsWorld(int capacity) {
+        this(capacity, 4096);
+    }
+
+    /**
+     * Initializes an empty world.
+     * 
+     * @param capacity how many entities to make room for. The world grows 
+     *     past this if needed.
+     * @param contactCapacity how many contact events can be queued, and 
+     *     touching pairs tracked in a step, before they are dropped
+     */
+    public PhysicsWorld(int capacity, int contactCapacity) {
+        contactEvents = new ContactEvents(contactCapacity);
+        capacity = Math.max(capacity, 1);
+        entities = new PhysicsEntity[capacity];
+        slotEntities = new PhysicsEntity[capacity];
+        generations = new int[capacity];
+        denseIndices = new int[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    /**
+     * Creates an entity, reusing a destroyed one if there is one.
+     * 
+     * @param xPosition x position
+     * @param yPosition y position
+     * @param width width of the collider
+     * @param height height of the collider
+     * @param doKinematics wether the entity should be able to move
+     * @param collidable wether the entity should be hittable or pass-able 
+     *     through
+     * @return handle of the entity, which is also its ID
+     */
+    public int create(float xPosition, float yPosition, float width, 
+        float height, boolean doKinematics, boolean collidable) 
+    {
+        int slot;
+        if (freeCount > 0) {
+            freeCount--;
+            slot = freeSlots[freeCount];
+        }
+        else {
+            if (slotCount > INDEX_MASK) {
+                throw new RuntimeException("Too many physics entities.");
+            }
+            if (slotCount == slotEntities.length) {
+                grow();
+            }
+            slot = slotCount;
+            // Slots dropped by a restore keep their entity.
+            if (slotEntities[slot] == null) {
+                slotEntities[slot] = new PhysicsEntity();
+            }
+            slotCount++;
+        }
+
+        int handle = generations[slot] << INDEX_BITS | slot;
+        PhysicsEntity entity = slotEntities[slot];
+        entity.reset(xPosition, yPosition, width, height, doKinematics, 
+            collidable, handle);
+        denseIndices[slot] = count;
+        entities[count] = entity;
+        count++;
+        return handle;
+    }
+
+    private void grow() {
+        int capacity = Math.min(slotEntities.length * 2, INDEX_MASK + 1);
+        entities = Arrays.copyOf(entities, capacity);
+        slotEntities = Arrays.copyOf(slotEntities, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        denseIndices = Arrays.copyOf(denseIndices, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    /**
+     * Destroys an entity. Its handle stops being alive and its slot is reused 
+     * by a later create(). Sleeping entities touching it are woken so nothing 
+     * is left resting on thin air.
+     * 
+     * @param handle handle of a live entity
+     */
+    public void destroy(int handle) {
+        if (!isAlive(handle)) {
+            throw new RuntimeException("Physics entity is not alive.");
+        }
+        int slot = handle & INDEX_MASK;
+        PhysicsEntity entity = slotEntities[slot];
+
+        // Fills the hole with the last entity to keep the array packed.
+        int denseIndex = denseIndices[slot];
+        PhysicsEntity last = entities[count - 1];
+        entities[denseIndex] = last;
+        denseIndices[last.getID() & INDEX_MASK] = denseIndex;
+        entities[count - 1] = null;
+        count--;
+
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        // Retires the slot once its generation wraps.
+        if (generations[slot] != 0) {
+            freeSlots[freeCount] = slot;
+            freeCount++;
+        }
+
+        if (entity.isCollidable()) {
+            for (int i = 0; i < count; i++) {
+                if (entities[i].isSleeping() && entity.touches(entities[i])) {
+                    entities[i].wake();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns wether the handle refers to an entity that has not been 
+     * destroyed.
+     */
+    public boolean isAlive(int handle) {
+        int slot = handle & INDEX_MASK;
+        return slot < slotCount 
+            && generations[slot] == (handle >>> INDEX_BITS)
+            && denseIndices[slot] < count 
+            && entities[denseIndices[slot]] == slotEntities[slot];
+    }
+
+    /**
+     * Returns the entity of a handle.
+     * 
+     * @param handle handle of a live entity
+     */
+    public PhysicsEntity get(int handle) {
+        if (!isAlive(handle)) {
+            throw new RuntimeException("Physics entity is not alive.");
+        }
+        return slotEntities[handle & INDEX_MASK];
+    }
+
+    /**
+     * Steps the world over the time since the last step, measured with the 
+     * wall clock.
+     * 
+     * @see #step(float)
+     */
+    public void step() {
+        long currentEpoch = System.nanoTime();
+        float deltaTime = (currentEpoch - lastEpoch) / 1000000000.0f;
+        step(deltaTime);
+    }
+
+    /**
+     * Updates every entity once against all the others and the collision 
+     * grid, if there is one, and queues the contact events of the step. 
+     * Stepping the same state with the same time step always gives the same 
+     * result, so call it from Simulation.step() with the loop's fixed time 
+     * step.
+     * 
+     * @param deltaTime length of the step in seconds
+     */
+    public void step(float deltaTime) {
+        lastEpoch = System.nanoTime();
+        PhysicsStepEvent event = new PhysicsStepEvent();
+        // Counting is skipped unless a recording wants the event.
+        boolean recording = event.isEnabled();
+        event.begin();
+        int awakeCount = 0;
+        long pairsTested = 0;
+        for (int i = 0; i < count; i++) {
+            if (recording && !entities[i].isSleeping()) {
+                awakeCount++;
+                if (entities[i].isCollidable()) {
+                    pairsTested += count - 1;
+                }
+            }
+            entities[i].update(entities, count, grid, contactEvents, 
+                deltaTime);
+        }
+        int contacts = contactEvents.getPairCount();
+        contactEvents.finishStep(this);
+        event.end();
+        if (event.shouldCommit()) {
+            event.bodies = count;
+            event.awakeBodies = awakeCount;
+            event.pairsTested = pairsTested;
+            event.contacts = contacts;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the bytes writeState() writes.
+     */
+    int getStateSize() {
+        return 4 * 2 + slotCount * 4 + freeCount * 4 
+            + count * PhysicsEntity.SHAPE_BYTES 
+            + contactEvents.getPairStateSize();
+    }
+
+    /**
+     * Writes what the entities' own state leaves out: the slot count, the 
+     * free slot count, every slot's generation, the free slots in order, the 
+     * shape of each live entity in order and the pairs touching.
+     */
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(slotCount);
+        buffer.putInt(freeCount);
+        for (int i = 0; i < slotCount; i++) {
+            buffer.putInt(generations[i]);
+        }
+        for (int i = 0; i < freeCount; i++) {
+            buffer.putInt(freeSlots[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            entities[i].writeShape(buffer);
+        }
+        contactEvents.writePairs(buffer);
+    }
+
+    /**
+     * Reads what writeState() wrote and puts the live entities back in their 
+     * saved order, ready to have their state read. Queued contact events are 
+     * discarded.
+     * 
+     * @param count number of live entities saved
+     */
+    void readState(ByteBuffer buffer, int count) {
+        int savedSlotCount = buffer.getInt();
+        int savedFreeCount = buffer.getInt();
+        if (savedSlotCount > INDEX_MASK + 1) {
+            throw new RuntimeException("Too many physics entities.");
+        }
+        while (savedSlotCount > slotEntities.length) {
+            grow();
+        }
+        slotCount = savedSlotCount;
+        freeCount = savedFreeCount;
+        for (int i = 0; i < slotCount; i++) {
+            generations[i] = buffer.getInt();
+        }
+        for (int i = 0; i < freeCount; i++) {
+            freeSlots[i] = buffer.getInt();
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = buffer.getInt(buffer.position()) & INDEX_MASK;
+            if (slotEntities[slot] == null) {
+                slotEntities[slot] = new PhysicsEntity();
+            }
+            slotEntities[slot].readShape(buffer);
+            entities[i] = slotEntities[slot];
+            denseIndices[slot] = i;
+        }
+        Arrays.fill(entities, count, Math.max(this.count, count), null);
+        this.count = count;
+        contactEvents.readPairs(buffer);
+    }
+
+    /**
+     * Returns the contact events queued by step(). Events stay queued until 
+     * read, so drain it every step.
+     */
+    public ContactEvents getContactEvents() {
+        return contactEvents;
+    }
+
+    /**
+     * Returns the live entities, packed at the start of the array. Only the 
+     * first getCount() are valid. The order changes when entities are 
+     * destroyed, so iterate by index rather than keeping indices around.
+     */
+    public PhysicsEntity[] getEntities() {
+        return entities;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Sets the static tiles entities collide with.
+     * 
+     * @param grid collision grid, or null for none
+     */
+    public void setCollisionGrid(CollisionGrid grid) {
+        this.grid = grid;
+    }
+
+    public CollisionGrid getCollisionGrid() {
+        return grid;
+    }
+}
@@ -0,0 +1,59 @@
+package engine;
+
+/**
+ * Something quads can be drawn to. Renderer draws them with OpenGL and 
+ * HeadlessRenderer only builds the vertices, so drawing code can run without 
+ * a window.
+ */
+public interface QuadBatch {
+    /** Fully covers what is behind it. Drawn first, nearest first. */
+    int OPAQUE = 0;
+    /** Pixels are either fully see through or fully opaque. */
+    int ALPHA_TESTED = 1;
+    /** Blended with what is behind it. Drawn last, farthest first. */
+    int TRANSLUCENT = 2;
+
+    /**
+     * Adds a textured colored rectangle to the batch and flushes it if its 
+     * full. See Renderer.addQuad for the parameters.
+     */
+    void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, float xTextureCoord, float yTextureCoord, 
+        float textureWidth, float textureHeight, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas);
+
+    /**
+     * Adds a colored rectangle textured with an atlas region to the batch and 
+     * flushes it if its full. See Renderer.addQuad for the parameters.
+     */
+    void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, int region, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas);
+
+    /**
+     * Sets the material of the quads added after it.
+     * 
+     * @param material OPAQUE, ALPHA_TESTED or TRANSLUCENT
+     */
+    void setMaterial(int material);
+
+    /**
+     * Draws the batch and resets buffers.
+     */
+    void flush();
+
+    /**
+     * Sets the camera's center to the position in pixels given.
+     */
+    void setCameraPosition(float x, float y, float z);
+
+    /**
+     * Returns the x position in pixels of the camera's center.
+     */
+    float getCameraX();
+
+    /**
+     * Returns the y position in pixels of the camera's center.
+     */
+    float getCameraY();
+}
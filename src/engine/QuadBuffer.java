@@ -0,0 +1,226 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * The vertices of a QuadBatch, in a batch per material, and their sorting
+ * into draw order. Shared by Renderer and HeadlessRenderer so both build
+ * exactly the same vertices.
+ * 
+ * A vertex is x, y, z, u, v, red, green, blue and alpha as floats. A quad is
+ * 4 vertices: top left, top right, bottom right, bottom left.
+ */
+final class QuadBuffer {
+    static final int MAX_QUAD_COUNT = 1000;
+    static final int MATERIAL_COUNT = 3;
+    static final int VERTEX_BYTE_SIZE = 4 * 9;
+    static final int QUAD_BYTE_SIZE = VERTEX_BYTE_SIZE * 4;
+    static final int VERTICES_SIZE = MAX_QUAD_COUNT * QUAD_BYTE_SIZE;
+    static final int SORTED_VERTICES_SIZE = VERTICES_SIZE * MATERIAL_COUNT;
+    private ByteBuffer[] batches = new ByteBuffer[MATERIAL_COUNT];
+    // Batch of the current material.
+    private ByteBuffer vertices;
+    private int material = QuadBatch.TRANSLUCENT;
+    private float[][] depths = new float[MATERIAL_COUNT][MAX_QUAD_COUNT];
+    // Wether each batch was added in the order it is drawn in.
+    private boolean[] inOrder = new boolean[MATERIAL_COUNT];
+    private long[] sortKeys = new long[MAX_QUAD_COUNT];
+    private int[] quadCounts = new int[MATERIAL_COUNT];
+    // All batches in draw order.
+    private ByteBuffer sortedVertices = ResourceRegistry.calloc(
+        SORTED_VERTICES_SIZE);
+
+    QuadBuffer() {
+        for (int i = 0; i < MATERIAL_COUNT; i++) {
+            batches[i] = ResourceRegistry.calloc(VERTICES_SIZE);
+            inOrder[i] = true;
+        }
+        vertices = batches[material];
+    }
+
+    /**
+     * Records the depth of a quad about to be added to the current batch.
+     */
+    private void addDepth(float zPosition) {
+        int quad = quadCounts[material];
+        if (quad > 0) {
+            float previous = depths[material][quad - 1];
+            inOrder[material] &= material == QuadBatch.TRANSLUCENT
+                ? zPosition <= previous : zPosition >= previous;
+        }
+        depths[material][quad] = zPosition;
+        quadCounts[material] = quad + 1;
+    }
+
+    private void addVertex(float xPosition, float yPosition, float zPosition,
+        float xTextureCoord, float yTextureCoord, float red, float green,
+        float blue, float alpha)
+    {
+        vertices.putFloat(xPosition);
+        vertices.putFloat(yPosition);
+        vertices.putFloat(zPosition);
+        vertices.putFloat(xTextureCoord);
+        vertices.putFloat(yTextureCoord);
+        vertices.putFloat(red);
+        vertices.putFloat(green);
+        vertices.putFloat(blue);
+        vertices.putFloat(alpha);
+    }
+
+    /**
+     * Adds a quad with texture coordinates in pixels to the current batch.
+     * 
+     * @return wether the batch is full and must be flushed
+     * @see QuadBatch#addQuad(float, float, float, float, float, float, float,
+     *     float, float, float, float, float, float, TextureAtlas)
+     */
+    boolean addQuad(float xPosition, float yPosition, float zPosition,
+        float width, float height, float xTextureCoord, float yTextureCoord,
+        float textureWidth, float textureHeight, float red, float green,
+        float blue, float alpha, TextureAtlas textureAtlas)
+    {
+        float xTextureCoordRatio = xTextureCoord / textureAtlas.getWidth();
+        float yTextureCoordRatio = yTextureCoord / textureAtlas.getHeight();
+        float textureWidthRatio = textureWidth / textureAtlas.getWidth();
+        float textureHeightRatio = textureHeight / textureAtlas.getHeight();
+
+        addDepth(zPosition);
+        addVertex(xPosition, yPosition, zPosition, xTextureCoordRatio,
+            yTextureCoordRatio, red, green, blue, alpha);
+        addVertex(xPosition + width, yPosition, zPosition, xTextureCoordRatio
+            + textureWidthRatio, yTextureCoordRatio, red, green, blue, alpha);
+        addVertex(xPosition + width, yPosition + height, zPosition,
+            xTextureCoordRatio + textureWidthRatio, yTextureCoordRatio
+            + textureHeightRatio, red, green, blue, alpha);
+        addVertex(xPosition, yPosition + height, zPosition, xTextureCoordRatio,
+            yTextureCoordRatio + textureHeightRatio, red, green, blue, alpha);
+
+        return vertices.position() == vertices.capacity();
+    }
+
+    /**
+     * Adds a quad textured with an atlas region to the current batch.
+     * 
+     * @return wether the batch is full and must be flushed
+     * @see QuadBatch#addQuad(float, float, float, float, float, int, float,
+     *     float, float, float, TextureAtlas)
+     */
+    boolean addQuad(float xPosition, float yPosition, float zPosition,
+        float width, float height, int region, float red, float green,
+        float blue, float alpha, TextureAtlas textureAtlas)
+    {
+        float[] regions = textureAtlas.getRegions();
+        int offset = region * 4;
+        float left = regions[offset];
+        float top = regions[offset + 1];
+        float right = regions[offset + 2];
+        float bottom = regions[offset + 3];
+
+        addDepth(zPosition);
+        addVertex(xPosition, yPosition, zPosition, left, top, red, green,
+            blue, alpha);
+        addVertex(xPosition + width, yPosition, zPosition, right, top, red,
+            green, blue, alpha);
+        addVertex(xPosition + width, yPosition + height, zPosition, right,
+            bottom, red, green, blue, alpha);
+        addVertex(xPosition, yPosition + height, zPosition, left, bottom, red,
+            green, blue, alpha);
+
+        return vertices.position() == vertices.capacity();
+    }
+
+    /**
+     * Switches the batch quads are added to.
+     */
+    void setMaterial(int material) {
+        if (material < 0 || material >= MATERIAL_COUNT) {
+            throw new RuntimeException("Material does not exist.");
+        }
+        this.material = material;
+        vertices = batches[material];
+    }
+
+    int getMaterial() {
+        return material;
+    }
+
+    /**
+     * Returns the number of quads in a material's batch.
+     */
+    int getQuadCount(int material) {
+        return quadCounts[material];
+    }
+
+    /**
+     * Copies a batch into the sorted vertices in draw order, nearest first
+     * or for translucent quads farthest first.
+     */
+    private void sortInto(int material) {
+        ByteBuffer batch = batches[material];
+        int quadCount = quadCounts[material];
+        if (inOrder[material]) {
+            batch.flip();
+            sortedVertices.put(batch);
+        }
+        else {
+            float[] depth = depths[material];
+            for (int i = 0; i < quadCount; i++) {
+                // Flips the bits of negative floats so they sort as ints.
+                int bits = Float.floatToIntBits(depth[i]);
+                bits ^= (bits >> 31) & 0x7FFFFFFF;
+                if (material == QuadBatch.TRANSLUCENT) {
+                    bits = ~bits;
+                }
+                // The index breaks ties, keeping the order quads were added.
+                sortKeys[i] = (long)bits << 32 | i;
+            }
+            Arrays.sort(sortKeys, 0, quadCount);
+            long source = MemoryUtil.memAddress0(batch);
+            for (int i = 0; i < quadCount; i++) {
+                int quad = (int)sortKeys[i];
+                MemoryUtil.memCopy(source + (long)quad * QUAD_BYTE_SIZE,
+                    MemoryUtil.memAddress(sortedVertices), QUAD_BYTE_SIZE);
+                sortedVertices.position(sortedVertices.position()
+                    + QUAD_BYTE_SIZE);
+            }
+        }
+        batch.clear();
+        inOrder[material] = true;
+        quadCounts[material] = 0;
+    }
+
+    /**
+     * Sorts every batch into draw order, opaque quads first, then alpha
+     * tested, then translucent, and empties the batches.
+     * 
+     * @return the sorted vertices, from 0 to the limit. Valid until the next
+     *     sort.
+     */
+    ByteBuffer sort() {
+        sortedVertices.clear();
+        for (int i = 0; i < MATERIAL_COUNT; i++) {
+            sortInto(i);
+        }
+        sortedVertices.flip();
+        return sortedVertices;
+    }
+
+    /**
+     * Frees the buffers. Does nothing if already freed.
+     */
+    void free() {
+        if (sortedVertices == null) {
+            return;
+        }
+        for (int i = 0; i < MATERIAL_COUNT; i++) {
+            ResourceRegistry.free(batches[i]);
+            batches[i] = null;
+        }
+        ResourceRegistry.free(sortedVertices);
+        sortedVertices = null;
+        vertices = null;
+    }
+}
@@ -1,9 +1,17 @@
 package engine;
 
+import static org.lwjgl.opengl.GL11C.GL_BLEND;
+import static org.lwjgl.opengl.GL11C.GL_DEPTH_TEST;
 import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_LEQUAL;
 import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
 import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11C.glDepthFunc;
+import static org.lwjgl.opengl.GL11C.glDepthMask;
+import static org.lwjgl.opengl.GL11C.glDisable;
 import static org.lwjgl.opengl.GL11C.glDrawElements;
+import static org.lwjgl.opengl.GL11C.glEnable;
+import static org.lwjgl.opengl.GL11C.glIsEnabled;
 import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_DRAW;
 import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
@@ -11,11 +19,15 @@ import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
 import static org.lwjgl.opengl.GL15C.glBindBuffer;
 import static org.lwjgl.opengl.GL15C.glBufferData;
 import static org.lwjgl.opengl.GL15C.glBufferSubData;
+import static org.lwjgl.opengl.GL15C.glDeleteBuffers;
 import static org.lwjgl.opengl.GL15C.glGenBuffers;
 import static org.lwjgl.opengl.GL20C.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20C.glUniform1f;
 import static org.lwjgl.opengl.GL20C.glUniformMatrix4fv;
 import static org.lwjgl.opengl.GL20C.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL20C.nglUniformMatrix4fv;
 import static org.lwjgl.opengl.GL30C.glBindVertexArray;
+import static org.lwjgl.opengl.GL30C.glDeleteVertexArrays;
 import static org.lwjgl.opengl.GL30C.glGenVertexArrays;
 
 import java.nio.ByteBuffer;
@@ -25,20 +37,32 @@ import org.lwjgl.system.MemoryUtil;
 
 /**
  * A batch renderer.
+ * 
+ * Quads are kept in a batch per material. On flush, opaque quads are drawn 
+ * first, nearest first with depth writes and no blending, so hidden pixels 
+ * are rejected by the depth test instead of shaded. Alpha tested quads are 
+ * drawn next the same way, discarding see through pixels. Translucent quads 
+ * are drawn last, farthest first and blended. A smaller z is nearer.
  */
-public final class Renderer {
+public final class Renderer implements QuadBatch, AutoCloseable {
     private int vertexId;
     private int indexId;
     private int vaoId;
-    private final int MAX_QUAD_COUNT = 1000;
-    private final int MAX_INDEX_COUNT = MAX_QUAD_COUNT * 6;
-    private final int VERTEX_BYTE_SIZE = 4 * 9;
-    private final int VERTICES_SIZE = (MAX_QUAD_COUNT * 4) * VERTEX_BYTE_SIZE;
-    private ByteBuffer vertices = MemoryUtil.memCalloc(VERTICES_SIZE);
+    private final int MAX_INDEX_COUNT = QuadBuffer.MAX_QUAD_COUNT * 6 
+        * QuadBuffer.MATERIAL_COUNT;
+    private final int VERTEX_BYTE_SIZE = QuadBuffer.VERTEX_BYTE_SIZE;
+    private QuadBuffer quads = new QuadBuffer();
     private Shader shader;
+    private Shader alphaTestedShader;
+    // Wether the shaders were made by the renderer and close with it.
+    private boolean ownsShaders = false;
+    private float alphaCutoff = 0.5f;
     private Matrix4f matrix = new Matrix4f();
+    private FrameArena frameArena;
     private float windowWidth;
     private float windowHeight;
+    private float cameraX;
+    private float cameraY;
 
     /**
      * Initializes everything needed for the batch rendering. (Not GLFW stuff.)
@@ -48,20 +72,47 @@ public final class Renderer {
      * @param shaderPath path to the shader file
      */
     public Renderer(float windowWidth, float windowHeight, String shaderPath) {
+        this(windowWidth, windowHeight, new Shader(shaderPath), 
+            new Shader(shaderPath, "ALPHA_TEST"));
+        ownsShaders = true;
+    }
+
+    /**
+     * Initializes everything needed for the batch rendering with shaders 
+     * that are already compiled, such as ones from an asset pack.
+     * 
+     * @param windowWidth window width in pixels
+     * @param windowHeight window height in pixels
+     * @param shader shader with the same inputs as shaders/shader.glsl
+     * @param alphaTestedShader the same shader compiled with ALPHA_TEST 
+     *     defined
+     */
+    public Renderer(float windowWidth, float windowHeight, Shader shader, 
+        Shader alphaTestedShader) 
+    {
         makeAndUseVAO();
 
-        shader = new Shader(shaderPath);
+        this.alphaTestedShader = alphaTestedShader;
+        alphaTestedShader.use();
+        // The location must be the same as u_alphaCutoff' in the shader.
+        glUniform1f(2, alphaCutoff);
+
+        this.shader = shader;
         shader.use();
 
         this.windowWidth = windowWidth;
         this.windowHeight = windowHeight;
+        // Until the camera is set, the top left corner is at (0, 0).
+        cameraX = windowWidth / 2.0f;
+        cameraY = windowHeight / 2.0f;
         matrix.orthographic(0.0f, windowWidth, windowHeight, 0.0f, 0.0f, 10.0f);
         // The location must be the same as u_viewProjection' in the shader.
         glUniformMatrix4fv(0, false, matrix.toFloatBuffer());
 
         vertexId = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vertexId);
-        glBufferData(GL_ARRAY_BUFFER, vertices, GL_DYNAMIC_DRAW);
+        glBufferData(GL_ARRAY_BUFFER, QuadBuffer.SORTED_VERTICES_SIZE, 
+            GL_DYNAMIC_DRAW);
 
         glEnableVertexAttribArray(0);
         glVertexAttribPointer(0, 3, GL_FLOAT, false, VERTEX_BYTE_SIZE, 0);
@@ -91,6 +142,10 @@ public final class Renderer {
         
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        ResourceRegistry.addGlObjects(ResourceRegistry.VERTEX_ARRAY, 1);
+        ResourceRegistry.addGlObjects(ResourceRegistry.BUFFER, 2);
+        ResourceRegistry.register(this, "Renderer");
     }
 
     private void makeAndUseVAO() {
@@ -98,21 +153,6 @@ public final class Renderer {
         glBindVertexArray(vaoId);
     }
 
-    private void addVertex(float xPosition, float yPosition, float zPosition, 
-        float xTextureCoord, float yTextureCoord, float red, float green, 
-        float blue, float alpha) 
-    {
-        vertices.putFloat(xPosition);
-        vertices.putFloat(yPosition);
-        vertices.putFloat(zPosition);
-        vertices.putFloat(xTextureCoord);
-        vertices.putFloat(yTextureCoord);
-        vertices.putFloat(red);
-        vertices.putFloat(green);
-        vertices.putFloat(blue);
-        vertices.putFloat(alpha);
-    }
-
     /**
      * Adds a textured colored rectangle to the batch and flushes it if its 
      * full.
@@ -125,9 +165,8 @@ public final class Renderer {
      * 
      * @param xPosition x position in pixels
      * @param yPosition y position in pixels
-     * @param zPosition z position. Can be used for depth testing if it is 
-     *     enabled, but transparency may not work as expected. Otherwise should 
-     *     be set to 0.0f.
+     * @param zPosition z position from 0 to 10, smaller being nearer. 
+     *     Decides which quads cover others, whatever order they are added in.
      * @param width width in pixels
      * @param height height in pixels
      * @param xTextureCoord x texture position in pixels
@@ -140,57 +179,208 @@ public final class Renderer {
      * @param alpha opacity 0-1
      * @param textureAtlas currently bound texture atlas
      */
+    @Override
     public void addQuad(float xPosition, float yPosition, float zPosition, 
         float width, float height, float xTextureCoord, float yTextureCoord, 
         float textureWidth, float textureHeight, float red, float green, 
         float blue, float alpha, TextureAtlas textureAtlas) 
     {
-        float xTextureCoordRatio = xTextureCoord / textureAtlas.getWidth();
-        float yTextureCoordRatio = yTextureCoord / textureAtlas.getHeight();
-        float textureWidthRatio = textureWidth / textureAtlas.getWidth();
-        float textureHeightRatio = textureHeight / textureAtlas.getHeight();
-
-        addVertex(xPosition, yPosition, zPosition, xTextureCoordRatio, 
-            yTextureCoordRatio, red, green, blue, alpha);
-        addVertex(xPosition + width, yPosition, zPosition, xTextureCoordRatio 
-            + textureWidthRatio, yTextureCoordRatio, red, green, blue, alpha);
-        addVertex(xPosition + width, yPosition + height, zPosition, 
-            xTextureCoordRatio + textureWidthRatio, yTextureCoordRatio 
-            + textureHeightRatio, red, green, blue, alpha);
-        addVertex(xPosition, yPosition + height, zPosition, xTextureCoordRatio,
-            yTextureCoordRatio + textureHeightRatio, red, green, blue, alpha);
-        
-        if (vertices.position() == vertices.capacity()) {
+        if (quads.addQuad(xPosition, yPosition, zPosition, width, height, 
+            xTextureCoord, yTextureCoord, textureWidth, textureHeight, red, 
+            green, blue, alpha, textureAtlas)) 
+        {
             flush();
         }
     }
 
     /**
-     * Draws the batch and resets buffers.
+     * Adds a colored rectangle textured with an atlas region to the batch and 
+     * flushes it if its full. Faster than passing texture coordinates in 
+     * pixels, since the region's coordinates are already normalized.
+     * 
+     * @param xPosition x position in pixels
+     * @param yPosition y position in pixels
+     * @param zPosition z position from 0 to 10, smaller being nearer. 
+     *     Decides which quads cover others, whatever order they are added in.
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param region region handle from TextureAtlas.addRegion
+     * @param red red amount 0-1
+     * @param green green amount 0-1
+     * @param blue blue amount 0-1
+     * @param alpha opacity 0-1
+     * @param textureAtlas currently bound texture atlas the region is from
      */
-    public void flush() {
-        if (vertices.position() != 0) {
+    @Override
+    public void addQuad(float xPosition, float yPosition, float zPosition, 
+        float width, float height, int region, float red, float green, 
+        float blue, float alpha, TextureAtlas textureAtlas) 
+    {
+        if (quads.addQuad(xPosition, yPosition, zPosition, width, height, 
+            region, red, green, blue, alpha, textureAtlas)) 
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Sets the material of the quads added after it. Stays set until changed.
+     * 
+     * @param material OPAQUE, ALPHA_TESTED or TRANSLUCENT, which is the 
+     *     default
+     */
+    @Override
+    public void setMaterial(int material) {
+        quads.setMaterial(material);
+    }
+
+    /**
+     * Sets the opacity under which alpha tested pixels are discarded.
+     * 
+     * @param alphaCutoff opacity 0-1, 0.5 by default
+     */
+    public void setAlphaCutoff(float alphaCutoff) {
+        this.alphaCutoff = alphaCutoff;
+        alphaTestedShader.use();
+        glUniform1f(2, alphaCutoff);
+    }
+
+    /**
+     * Sets the matrix of the current shader, from a copy in the frame arena 
+     * if the address is not 0.
+     */
+    private void uploadMatrix(long matrixAddress) {
+        if (matrixAddress != 0) {
+            nglUniformMatrix4fv(0, 1, false, matrixAddress);
+        }
+        else {
             glUniformMatrix4fv(0, false, matrix.toFloatBuffer());
+        }
+    }
 
-            glBindBuffer(GL_ARRAY_BUFFER, vertexId);
-            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexId);
-            
-            vertices.flip();
-            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
-            vertices.clear();
+    private void drawQuads(int firstQuad, int quadCount) {
+        glDrawElements(GL_TRIANGLES, quadCount * 6, GL_UNSIGNED_INT, 
+            (long)firstQuad * 6 * 4);
+    }
+
+    /**
+     * Draws the batches and resets buffers.
+     */
+    @Override
+    public void flush() {
+        int opaqueCount = quads.getQuadCount(OPAQUE);
+        int alphaTestedCount = quads.getQuadCount(ALPHA_TESTED);
+        int translucentCount = quads.getQuadCount(TRANSLUCENT);
+        if (opaqueCount + alphaTestedCount + translucentCount == 0) {
+            return;
+        }
+        FlushEvent event = new FlushEvent();
+        event.begin();
+        // Other renderers may have bound their own state in between.
+        glBindVertexArray(vaoId);
+
+        glBindBuffer(GL_ARRAY_BUFFER, vertexId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexId);
 
-            glDrawElements(GL_TRIANGLES, MAX_INDEX_COUNT, GL_UNSIGNED_INT, 0);
+        ByteBuffer sortedVertices = quads.sort();
+        glBufferSubData(GL_ARRAY_BUFFER, 0, sortedVertices);
 
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        // Written once and shared by every pass.
+        long matrixAddress = frameArena != null 
+            ? matrix.toFrameArena(frameArena) : 0;
+        boolean blend = glIsEnabled(GL_BLEND);
+        boolean depthTest = glIsEnabled(GL_DEPTH_TEST);
+        glEnable(GL_DEPTH_TEST);
+        glDepthFunc(GL_LEQUAL);
+        if (opaqueCount + alphaTestedCount != 0) {
+            glDisable(GL_BLEND);
+            if (opaqueCount != 0) {
+                shader.use();
+                uploadMatrix(matrixAddress);
+                drawQuads(0, opaqueCount);
+            }
+            if (alphaTestedCount != 0) {
+                alphaTestedShader.use();
+                uploadMatrix(matrixAddress);
+                drawQuads(opaqueCount, alphaTestedCount);
+            }
+        }
+        if (translucentCount != 0) {
+            // Tested against the depth of opaque quads without writing any.
+            glEnable(GL_BLEND);
+            glDepthMask(false);
+            shader.use();
+            uploadMatrix(matrixAddress);
+            drawQuads(opaqueCount + alphaTestedCount, translucentCount);
+            glDepthMask(true);
+        }
+        if (blend) {
+            glEnable(GL_BLEND);
+        }
+        else {
+            glDisable(GL_BLEND);
+        }
+        if (!depthTest) {
+            glDisable(GL_DEPTH_TEST);
+        }
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.quads = opaqueCount + alphaTestedCount + translucentCount;
+            event.translucentQuads = translucentCount;
+            event.bytes = sortedVertices.limit();
+            event.commit();
         }
     }
 
     /**
-     * Cleans up memory.
+     * Cleans up memory. Does nothing if already cleaned up.
      */
     public void freeBufferMemory() {
-        MemoryUtil.memFree(vertices);
+        quads.free();
+    }
+
+    /**
+     * Cleans up memory and deletes the OpenGL objects, and the shaders if the 
+     * renderer made them. Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        freeBufferMemory();
+        if (vaoId == 0) {
+            return;
+        }
+        glDeleteBuffers(vertexId);
+        glDeleteBuffers(indexId);
+        glDeleteVertexArrays(vaoId);
+        vaoId = 0;
+        ResourceRegistry.removeGlObjects(ResourceRegistry.VERTEX_ARRAY, 1);
+        ResourceRegistry.removeGlObjects(ResourceRegistry.BUFFER, 2);
+        if (ownsShaders) {
+            shader.close();
+            alphaTestedShader.close();
+        }
+        ResourceRegistry.unregister(this);
+    }
+
+    /**
+     * Sets an arena for memory that only lives for a frame, such as the 
+     * matrix uploaded on flush. Reset it once per frame.
+     * 
+     * @param frameArena arena, or null to use the stack
+     */
+    public void setFrameArena(FrameArena frameArena) {
+        this.frameArena = frameArena;
+    }
+
+    /**
+     * Returns the view projection matrix, camera included.
+     */
+    Matrix4f getMatrix() {
+        return matrix;
     }
 
     public float getWindowWidth() {
@@ -212,11 +402,30 @@ public final class Renderer {
      * @param y y position in pixels
      * @param z z position in pixels
      */
+    @Override
     public void setCameraPosition(float x, float y, float z) {
+        cameraX = x;
+        cameraY = y;
         matrix.setPosition(x / (windowWidth / -2.0f), y / (windowHeight / 2.0f), 
             z);
     }
 
+    /**
+     * Returns the x position in pixels of the camera's center.
+     */
+    @Override
+    public float getCameraX() {
+        return cameraX;
+    }
+
+    /**
+     * Returns the y position in pixels of the camera's center.
+     */
+    @Override
+    public float getCameraY() {
+        return cameraY;
+    }
+
     /**
      * Updates window size fields used for camera calculations and does an 
      * orthographic projection to maintain accurate coordinates.
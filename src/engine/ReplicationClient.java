@@ -0,0 +1,272 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Receives entity state from a ReplicationServer. Call update() every frame
+ * to read the snapshots that came in and acknowledge the newest, then read
+ * the entities of the newest one:
+ * 
+ *     client.setCameraPosition(cameraX, cameraY);
+ *     client.update();
+ *     for (int i = 0; i < client.getCount(); i++) {
+ *         draw(client.getID(i), client.getX(i), client.getY(i),
+ *             client.getAnimationFrame(i));
+ *     }
+ * 
+ * Only entities near the camera are sent, and they are ordered by ID.
+ */
+public final class ReplicationClient implements AutoCloseable {
+    private DatagramChannel channel;
+    private ByteBuffer receiveBuffer;
+    private ByteBuffer ackBuffer = ByteBuffer.allocateDirect(
+        ReplicationSnapshot.ACK_BYTES);
+    private ReplicationSnapshot[] history;
+    private ReplicationSnapshot latest;
+    private float cameraX = 0.0f;
+    private float cameraY = 0.0f;
+
+    /**
+     * Opens a socket to the server. Nothing is sent until update().
+     * 
+     * @param serverAddress address and port of the server
+     * @param maxEntities most entities the server sends in a snapshot
+     * @param maxPacketSize the server's maximum packet size
+     */
+    public ReplicationClient(InetSocketAddress serverAddress, int maxEntities,
+        int maxPacketSize)
+    {
+        receiveBuffer = ByteBuffer.allocateDirect(maxPacketSize);
+        history = new ReplicationSnapshot[ReplicationSnapshot.HISTORY];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new ReplicationSnapshot(maxEntities);
+        }
+        latest = new ReplicationSnapshot(0);
+        try {
+            channel = DatagramChannel.open();
+            channel.connect(serverAddress);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open replication socket.",
+                e);
+        }
+    }
+
+    /**
+     * Reads every snapshot that came in and sends an ack of the newest with
+     * the camera position.
+     */
+    public void update() {
+        try {
+            while (true) {
+                receiveBuffer.clear();
+                int size;
+                try {
+                    size = channel.read(receiveBuffer);
+                } catch (PortUnreachableException e) {
+                    // The server is not up yet.
+                    break;
+                }
+                if (size <= 0) {
+                    break;
+                }
+                receiveBuffer.flip();
+                readSnapshot();
+            }
+
+            ackBuffer.clear();
+            ackBuffer.put(ReplicationSnapshot.ACK);
+            ackBuffer.putInt(latest.sequence);
+            ackBuffer.putFloat(cameraX);
+            ackBuffer.putFloat(cameraY);
+            ackBuffer.flip();
+            try {
+                channel.write(ackBuffer);
+            } catch (PortUnreachableException e) {
+                // Sent again next update.
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not update replication.", e);
+        }
+    }
+
+    /**
+     * Decodes the packet in the receive buffer, unless it is older than the
+     * latest snapshot or its baseline is gone.
+     */
+    private void readSnapshot() {
+        if (receiveBuffer.remaining()
+            < ReplicationSnapshot.SNAPSHOT_HEADER_BYTES
+            || receiveBuffer.get() != ReplicationSnapshot.SNAPSHOT)
+        {
+            return;
+        }
+        int sequence = receiveBuffer.getInt();
+        int baseSequence = receiveBuffer.getInt();
+        int count = receiveBuffer.getShort() & 0xFFFF;
+        if (sequence <= latest.sequence) {
+            return;
+        }
+        int slot = sequence % ReplicationSnapshot.HISTORY;
+        ReplicationSnapshot snapshot = history[slot];
+        ReplicationSnapshot base = null;
+        if (baseSequence >= 0) {
+            base = history[baseSequence % ReplicationSnapshot.HISTORY];
+            if (base.sequence != baseSequence || base == snapshot) {
+                return;
+            }
+        }
+        // After a long loss the slot can still hold the latest snapshot, 
+        // which must stay readable.
+        if (count > snapshot.ids.length || snapshot == latest) {
+            return;
+        }
+
+        // Marked unusable until it is fully read.
+        snapshot.sequence = -1;
+        int baseIndex = 0;
+        int baseCount = base == null ? 0 : base.count;
+        int id = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                id += ReplicationSnapshot.getVarInt(receiveBuffer);
+                while (baseIndex < baseCount && base.ids[baseIndex] < id) {
+                    baseIndex++;
+                }
+                boolean inBase = baseIndex < baseCount
+                    && base.ids[baseIndex] == id;
+                int mask = receiveBuffer.get() & 0xFF;
+                snapshot.ids[i] = id;
+                for (int j = 0; j < ReplicationSnapshot.FIELD_COUNT; j++) {
+                    int value = inBase ? base.fields[j][baseIndex] : 0;
+                    if ((mask & 1 << j) != 0) {
+                        value += ReplicationSnapshot.getZigZag(receiveBuffer);
+                    }
+                    snapshot.fields[j][i] = value;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            return;
+        }
+        snapshot.count = count;
+        snapshot.sequence = sequence;
+        latest = snapshot;
+    }
+
+    /**
+     * Sets the position sent to the server to pick which entities are near.
+     * 
+     * @param x x position in pixels
+     * @param y y position in pixels
+     */
+    public void setCameraPosition(float x, float y) {
+        cameraX = x;
+        cameraY = y;
+    }
+
+    /**
+     * Returns the server sequence of the latest snapshot, or -1 if none came
+     * in yet.
+     */
+    public int getSequence() {
+        return latest.sequence;
+    }
+
+    /**
+     * Returns the number of entities in the latest snapshot.
+     */
+    public int getCount() {
+        return latest.count;
+    }
+
+    /**
+     * Returns the index of an entity in the latest snapshot, or -1 if it is
+     * not in it.
+     * 
+     * @param id entity ID
+     */
+    public int find(int id) {
+        int low = 0;
+        int high = latest.count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (latest.ids[middle] < id) {
+                low = middle + 1;
+            }
+            else if (latest.ids[middle] > id) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public int getID(int index) {
+        return latest.ids[index];
+    }
+
+    public float getX(int index) {
+        return latest.fields[ReplicationSnapshot.X][index]
+            / ReplicationSnapshot.PIXEL_SCALE;
+    }
+
+    public float getY(int index) {
+        return latest.fields[ReplicationSnapshot.Y][index]
+            / ReplicationSnapshot.PIXEL_SCALE;
+    }
+
+    public float getWidth(int index) {
+        return latest.fields[ReplicationSnapshot.WIDTH][index]
+            / ReplicationSnapshot.PIXEL_SCALE;
+    }
+
+    public float getHeight(int index) {
+        return latest.fields[ReplicationSnapshot.HEIGHT][index]
+            / ReplicationSnapshot.PIXEL_SCALE;
+    }
+
+    /**
+     * Returns the x velocity in meters per second.
+     */
+    public float getVelocityX(int index) {
+        return latest.fields[ReplicationSnapshot.VELOCITY_X][index]
+            / ReplicationSnapshot.VELOCITY_SCALE;
+    }
+
+    /**
+     * Returns the y velocity in meters per second.
+     */
+    public float getVelocityY(int index) {
+        return latest.fields[ReplicationSnapshot.VELOCITY_Y][index]
+            / ReplicationSnapshot.VELOCITY_SCALE;
+    }
+
+    public int getAnimationFrame(int index) {
+        return latest.fields[ReplicationSnapshot.ANIMATION_FRAME][index];
+    }
+
+    public boolean isSleeping(int index) {
+        return (latest.fields[ReplicationSnapshot.FLAGS][index]
+            & ReplicationSnapshot.SLEEPING) != 0;
+    }
+
+    /**
+     * Closes the socket.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close replication socket.",
+                e);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * Sends entity state to ReplicationClients over UDP every tick. Each client
+ * only gets the entities near its camera, written as differences from the
+ * last snapshot it acknowledged, so entities at rest cost a few bytes.
+ * 
+ *     server.beginSnapshot();
+ *     for (int i = 0; i < world.getCount(); i++) {
+ *         server.addEntity(world.getEntities()[i], frames[i]);
+ *     }
+ *     server.sendSnapshot();
+ * 
+ * Clients join by sending their first ack and are forgotten after 5 seconds
+ * without one. Lost packets are never resent, the next snapshot replaces
+ * them. Buffers are allocated up front, so nothing is allocated after the 
+ * server is made but the address the JDK returns with each ack.
+ */
+public final class ReplicationServer implements AutoCloseable {
+    private final long CLIENT_TIMEOUT_NANOS = 5000000000L;
+    private DatagramChannel channel;
+    private ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(64);
+    private ByteBuffer sendBuffer;
+    private float interestRadius;
+    // Entities added since beginSnapshot(), in the order they were added.
+    private ReplicationSnapshot staging;
+    private long[] sortKeys;
+    private ReplicationSnapshot[] history;
+    private int sequence = -1;
+    private long droppedCount = 0;
+    // Per client.
+    private SocketAddress[] addresses;
+    private int[] ackedSequences;
+    // Last sequence sent before the client joined. Earlier acks are from a
+    // previous connection and have no baseline here.
+    private int[] joinSequences;
+    private float[] cameraXs;
+    private float[] cameraYs;
+    private long[] lastHeard;
+    // Indices into the history snapshot of each entity sent to a client, by
+    // sequence.
+    private int[][][] sentIndices;
+    private int[][] sentCounts;
+    private int clientCount = 0;
+
+    /**
+     * Opens the server's socket.
+     * 
+     * @param address address and port to listen on. Port 0 picks a free one.
+     * @param maxEntities most entities in a snapshot
+     * @param maxClients most clients at once. Others are ignored until one
+     *     times out.
+     * @param interestRadius distance in pixels from a client's camera within
+     *     which entities are sent to it
+     * @param maxPacketSize largest packet to send. Entities that do not fit
+     *     are left out of that tick's packet. 1200 is safe on the internet.
+     */
+    public ReplicationServer(InetSocketAddress address, int maxEntities,
+        int maxClients, float interestRadius, int maxPacketSize)
+    {
+        if (maxPacketSize < ReplicationSnapshot.SNAPSHOT_HEADER_BYTES
+            + ReplicationSnapshot.MAX_ENTITY_BYTES)
+        {
+            throw new RuntimeException("Packet size is too small.");
+        }
+        this.interestRadius = interestRadius;
+        sendBuffer = ByteBuffer.allocateDirect(maxPacketSize);
+        staging = new ReplicationSnapshot(maxEntities);
+        sortKeys = new long[maxEntities];
+        history = new ReplicationSnapshot[ReplicationSnapshot.HISTORY];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new ReplicationSnapshot(maxEntities);
+        }
+        addresses = new SocketAddress[maxClients];
+        ackedSequences = new int[maxClients];
+        joinSequences = new int[maxClients];
+        cameraXs = new float[maxClients];
+        cameraYs = new float[maxClients];
+        lastHeard = new long[maxClients];
+        sentIndices = new int[maxClients][ReplicationSnapshot.HISTORY]
+            [maxEntities];
+        sentCounts = new int[maxClients][ReplicationSnapshot.HISTORY];
+        try {
+            channel = DatagramChannel.open();
+            channel.bind(address);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open replication socket.",
+                e);
+        }
+    }
+
+    /**
+     * Starts a new snapshot. Add every entity to it, then send it.
+     */
+    public void beginSnapshot() {
+        staging.count = 0;
+    }
+
+    /**
+     * Adds a physics entity to the snapshot.
+     * 
+     * @param entity entity to send. Its ID identifies it on the clients.
+     * @param animationFrame frame its animation is on, such as from
+     *     Animation.getFrame()
+     */
+    public void addEntity(PhysicsEntity entity, int animationFrame) {
+        addEntity(entity.getID(), entity.getPosition().getX(),
+            entity.getPosition().getY(), entity.getSize().getX(),
+            entity.getSize().getY(), entity.getVelocity().getX(),
+            entity.getVelocity().getY(), animationFrame, entity.isSleeping());
+    }
+
+    /**
+     * Adds an entity to the snapshot.
+     * 
+     * @param id ID that identifies the entity on the clients
+     * @param xPosition x position in pixels
+     * @param yPosition y position in pixels
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param xVelocity x velocity in meters per second
+     * @param yVelocity y velocity in meters per second
+     * @param animationFrame frame its animation is on
+     * @param sleeping wether the entity is at rest
+     */
+    public void addEntity(int id, float xPosition, float yPosition,
+        float width, float height, float xVelocity, float yVelocity,
+        int animationFrame, boolean sleeping)
+    {
+        if (staging.count == staging.ids.length) {
+            throw new RuntimeException("Too many entities for the snapshot.");
+        }
+        int i = staging.count;
+        int[][] fields = staging.fields;
+        staging.ids[i] = id;
+        fields[ReplicationSnapshot.X][i] = Math.round(xPosition
+            * ReplicationSnapshot.PIXEL_SCALE);
+        fields[ReplicationSnapshot.Y][i] = Math.round(yPosition
+            * ReplicationSnapshot.PIXEL_SCALE);
+        fields[ReplicationSnapshot.VELOCITY_X][i] = Math.round(xVelocity
+            * ReplicationSnapshot.VELOCITY_SCALE);
+        fields[ReplicationSnapshot.VELOCITY_Y][i] = Math.round(yVelocity
+            * ReplicationSnapshot.VELOCITY_SCALE);
+        fields[ReplicationSnapshot.WIDTH][i] = Math.round(width
+            * ReplicationSnapshot.PIXEL_SCALE);
+        fields[ReplicationSnapshot.HEIGHT][i] = Math.round(height
+            * ReplicationSnapshot.PIXEL_SCALE);
+        fields[ReplicationSnapshot.ANIMATION_FRAME][i] = animationFrame;
+        fields[ReplicationSnapshot.FLAGS][i] = sleeping
+            ? ReplicationSnapshot.SLEEPING : 0;
+        staging.count++;
+    }
+
+    /**
+     * Reads the acks that came in, then sends the snapshot to every client.
+     */
+    public void sendSnapshot() {
+        sequence++;
+        ReplicationSnapshot snapshot = history[sequence
+            % ReplicationSnapshot.HISTORY];
+        // Sorted by ID so snapshots can be matched up in one pass.
+        for (int i = 0; i < staging.count; i++) {
+            sortKeys[i] = (long)staging.ids[i] << 32 | i;
+        }
+        Arrays.sort(sortKeys, 0, staging.count);
+        for (int i = 0; i < staging.count; i++) {
+            int index = (int)sortKeys[i];
+            snapshot.ids[i] = staging.ids[index];
+            if (i > 0 && snapshot.ids[i] == snapshot.ids[i - 1]) {
+                throw new RuntimeException("Entity was added twice.");
+            }
+            for (int j = 0; j < ReplicationSnapshot.FIELD_COUNT; j++) {
+                snapshot.fields[j][i] = staging.fields[j][index];
+            }
+        }
+        snapshot.count = staging.count;
+        snapshot.sequence = sequence;
+
+        try {
+            receiveAcks();
+            long now = System.nanoTime();
+            for (int i = 0; i < clientCount; i++) {
+                if (now - lastHeard[i] > CLIENT_TIMEOUT_NANOS) {
+                    removeClient(i);
+                    i--;
+                    continue;
+                }
+                sendTo(i, snapshot);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not send snapshot.", e);
+        }
+    }
+
+    private void receiveAcks() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress address = channel.receive(receiveBuffer);
+            if (address == null) {
+                return;
+            }
+            if (receiveBuffer.position() != ReplicationSnapshot.ACK_BYTES
+                || receiveBuffer.get(0) != ReplicationSnapshot.ACK)
+            {
+                continue;
+            }
+            int client = 0;
+            while (client < clientCount
+                && !addresses[client].equals(address))
+            {
+                client++;
+            }
+            if (client == clientCount) {
+                if (clientCount == addresses.length) {
+                    continue;
+                }
+                addresses[client] = address;
+                ackedSequences[client] = -1;
+                joinSequences[client] = sequence;
+                clientCount++;
+            }
+            int ack = receiveBuffer.getInt(1);
+            // The snapshot about to be sent cannot have been received yet.
+            if (ack > ackedSequences[client] && ack > joinSequences[client]
+                && ack < sequence)
+            {
+                ackedSequences[client] = ack;
+            }
+            cameraXs[client] = receiveBuffer.getFloat(5);
+            cameraYs[client] = receiveBuffer.getFloat(9);
+            lastHeard[client] = System.nanoTime();
+        }
+    }
+
+    private void removeClient(int client) {
+        clientCount--;
+        addresses[client] = addresses[clientCount];
+        ackedSequences[client] = ackedSequences[clientCount];
+        joinSequences[client] = joinSequences[clientCount];
+        cameraXs[client] = cameraXs[clientCount];
+        cameraYs[client] = cameraYs[clientCount];
+        lastHeard[client] = lastHeard[clientCount];
+        // Swapped rather than copied so no history is lost.
+        int[][] indices = sentIndices[client];
+        sentIndices[client] = sentIndices[clientCount];
+        sentIndices[clientCount] = indices;
+        int[] counts = sentCounts[client];
+        sentCounts[client] = sentCounts[clientCount];
+        sentCounts[clientCount] = counts;
+        addresses[clientCount] = null;
+    }
+
+    private void sendTo(int client, ReplicationSnapshot snapshot)
+        throws IOException
+    {
+        int slot = sequence % ReplicationSnapshot.HISTORY;
+        int acked = ackedSequences[client];
+        ReplicationSnapshot base = null;
+        int[] baseIndices = null;
+        int baseCount = 0;
+        if (acked >= 0 && sequence - acked < ReplicationSnapshot.HISTORY) {
+            int baseSlot = acked % ReplicationSnapshot.HISTORY;
+            base = history[baseSlot];
+            baseIndices = sentIndices[client][baseSlot];
+            baseCount = sentCounts[client][baseSlot];
+        }
+        else {
+            acked = -1;
+        }
+
+        sendBuffer.clear();
+        sendBuffer.put(ReplicationSnapshot.SNAPSHOT);
+        sendBuffer.putInt(sequence);
+        sendBuffer.putInt(acked);
+        int countPosition = sendBuffer.position();
+        sendBuffer.putShort((short)0);
+
+        int[] indices = sentIndices[client][slot];
+        int sentCount = 0;
+        int baseIndex = 0;
+        int previousID = 0;
+        float cameraX = cameraXs[client] * ReplicationSnapshot.PIXEL_SCALE;
+        float cameraY = cameraYs[client] * ReplicationSnapshot.PIXEL_SCALE;
+        float radius = interestRadius * ReplicationSnapshot.PIXEL_SCALE;
+        int[][] fields = snapshot.fields;
+        for (int i = 0; i < snapshot.count; i++) {
+            float xDistance = fields[ReplicationSnapshot.X][i]
+                + fields[ReplicationSnapshot.WIDTH][i] * 0.5f - cameraX;
+            float yDistance = fields[ReplicationSnapshot.Y][i]
+                + fields[ReplicationSnapshot.HEIGHT][i] * 0.5f - cameraY;
+            if (xDistance * xDistance + yDistance * yDistance
+                > radius * radius)
+            {
+                continue;
+            }
+            if (sendBuffer.remaining() < ReplicationSnapshot.MAX_ENTITY_BYTES
+                || sentCount == 0xFFFF)
+            {
+                droppedCount++;
+                continue;
+            }
+
+            int id = snapshot.ids[i];
+            while (baseIndex < baseCount
+                && base.ids[baseIndices[baseIndex]] < id)
+            {
+                baseIndex++;
+            }
+            int baseEntity = baseIndex < baseCount
+                && base.ids[baseIndices[baseIndex]] == id
+                ? baseIndices[baseIndex] : -1;
+
+            ReplicationSnapshot.putVarInt(sendBuffer, id - previousID);
+            previousID = id;
+            int maskPosition = sendBuffer.position();
+            sendBuffer.put((byte)0);
+            int mask = 0;
+            for (int j = 0; j < ReplicationSnapshot.FIELD_COUNT; j++) {
+                int difference = fields[j][i]
+                    - (baseEntity < 0 ? 0 : base.fields[j][baseEntity]);
+                if (difference != 0) {
+                    mask |= 1 << j;
+                    ReplicationSnapshot.putZigZag(sendBuffer, difference);
+                }
+            }
+            sendBuffer.put(maskPosition, (byte)mask);
+            indices[sentCount] = i;
+            sentCount++;
+        }
+        sentCounts[client][slot] = sentCount;
+        sendBuffer.putShort(countPosition, (short)sentCount);
+        sendBuffer.flip();
+        // A full socket buffer drops the packet, like the network would.
+        channel.send(sendBuffer, addresses[client]);
+    }
+
+    /**
+     * Returns the address the server is listening on.
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress)channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not get socket address.", e);
+        }
+    }
+
+    /**
+     * Returns the number of clients heard from in the last 5 seconds.
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Returns the sequence of the last snapshot sent, or -1 before the
+     * first.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns how many times an entity near a client was left out of a packet
+     * because it was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Closes the socket.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close replication socket.",
+                e);
+        }
+    }
+}
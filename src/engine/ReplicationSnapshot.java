@@ -0,0 +1,85 @@
+package engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Quantized entity state of one replication tick, sorted by entity ID, and
+ * the wire format shared by ReplicationServer and ReplicationClient.
+ * 
+ * A snapshot packet is a type byte, the tick's sequence, the sequence of the
+ * baseline it is written against, or -1, and an entity count. Then per
+ * entity: the varint gap from the previous ID, a mask byte of the fields that
+ * differ from the baseline, and the zigzag varint difference of each of
+ * those fields. Entities missing from the baseline are written against 0.
+ * 
+ * An ack packet is a type byte, the latest sequence received and the
+ * camera's x and y position.
+ */
+final class ReplicationSnapshot {
+    static final byte SNAPSHOT = 1;
+    static final byte ACK = 2;
+    static final int SNAPSHOT_HEADER_BYTES = 1 + 4 + 4 + 2;
+    static final int ACK_BYTES = 1 + 4 + 4 + 4;
+    // Snapshots kept to delta against. At 60 ticks per second, acks older
+    // than about half a second fall back to full state.
+    static final int HISTORY = 32;
+    static final int X = 0;
+    static final int Y = 1;
+    static final int VELOCITY_X = 2;
+    static final int VELOCITY_Y = 3;
+    static final int WIDTH = 4;
+    static final int HEIGHT = 5;
+    static final int ANIMATION_FRAME = 6;
+    static final int FLAGS = 7;
+    static final int FIELD_COUNT = 8;
+    static final int SLEEPING = 1;
+    // Positions and sizes are kept to an eighth of a pixel, velocities to a
+    // 256th of a meter per second.
+    static final float PIXEL_SCALE = 8.0f;
+    static final float VELOCITY_SCALE = 256.0f;
+    // Largest an entity can take on the wire.
+    static final int MAX_ENTITY_BYTES = 5 + 1 + FIELD_COUNT * 5;
+    int sequence = -1;
+    int count = 0;
+    int[] ids;
+    int[][] fields = new int[FIELD_COUNT][];
+
+    ReplicationSnapshot(int maxEntities) {
+        ids = new int[maxEntities];
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            fields[i] = new int[maxEntities];
+        }
+    }
+
+    static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte)(value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Varint is too long.");
+    }
+
+    /**
+     * Writes a signed value so small magnitudes either way take few bytes.
+     */
+    static void putZigZag(ByteBuffer buffer, int value) {
+        putVarInt(buffer, value << 1 ^ value >> 31);
+    }
+
+    static int getZigZag(ByteBuffer buffer) {
+        int value = getVarInt(buffer);
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,189 @@
+package engine;
+
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Keeps count of the native memory and OpenGL objects the engine holds, and 
+ * of every owner that has not been closed yet, so leaks can be found at 
+ * shutdown:
+ * 
+ *     ResourceRegistry.closeAll();
+ *     ResourceRegistry.reportLeaks(System.err);
+ * 
+ * Engine classes that hold native memory or OpenGL objects register 
+ * themselves and unregister when closed. Games can register their own 
+ * owners too.
+ */
+public final class ResourceRegistry {
+    public static final int BUFFER = 0;
+    public static final int VERTEX_ARRAY = 1;
+    public static final int TEXTURE = 2;
+    public static final int SHADER = 3;
+    public static final int PROGRAM = 4;
+    private static final String[] TYPE_NAMES = {"buffers", "vertex arrays", 
+        "textures", "shaders", "programs"};
+    private static AtomicLong nativeBytes = new AtomicLong();
+    private static AtomicIntegerArray glObjects = new AtomicIntegerArray(
+        TYPE_NAMES.length);
+    // Open owners in the order they were registered.
+    private static LinkedHashMap<AutoCloseable, String> owners = 
+        new LinkedHashMap<>();
+
+    private ResourceRegistry() {
+    }
+
+    /**
+     * Starts tracking an owner until it is closed.
+     * 
+     * @param owner object whose close() frees what it holds
+     * @param name what to call it in leak reports
+     */
+    public static synchronized void register(AutoCloseable owner, 
+        String name) 
+    {
+        owners.put(owner, name);
+    }
+
+    /**
+     * Stops tracking an owner. Called from its close().
+     */
+    public static synchronized void unregister(AutoCloseable owner) {
+        owners.remove(owner);
+    }
+
+    /**
+     * Closes every open owner, newest first, so owners close before what 
+     * they were made from.
+     */
+    public static void closeAll() {
+        List<AutoCloseable> open;
+        synchronized (ResourceRegistry.class) {
+            open = new ArrayList<>(owners.keySet());
+        }
+        for (int i = open.size() - 1; i >= 0; i--) {
+            try {
+                open.get(i).close();
+            } catch (Exception e) {
+                throw new RuntimeException("Could not close resource.", e);
+            }
+        }
+    }
+
+    /**
+     * Prints every owner still open, and the native memory and OpenGL 
+     * objects still held.
+     * 
+     * @param out stream to print to
+     * @return wether anything leaked
+     */
+    public static synchronized boolean reportLeaks(PrintStream out) {
+        boolean leaked = false;
+        for (Map.Entry<AutoCloseable, String> owner : owners.entrySet()) {
+            out.println("Leaked " + owner.getValue() + ".");
+            leaked = true;
+        }
+        if (nativeBytes.get() != 0) {
+            out.println("Leaked " + nativeBytes.get() + " native bytes.");
+            leaked = true;
+        }
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (glObjects.get(i) != 0) {
+                out.println("Leaked " + glObjects.get(i) + " OpenGL " 
+                    + TYPE_NAMES[i] + ".");
+                leaked = true;
+            }
+        }
+        return leaked;
+    }
+
+    /**
+     * Returns the bytes of native memory allocated through the registry and 
+     * not freed yet.
+     */
+    public static long getNativeBytes() {
+        return nativeBytes.get();
+    }
+
+    /**
+     * Returns how many OpenGL objects of a type are made and not deleted yet.
+     * 
+     * @param type BUFFER, VERTEX_ARRAY, TEXTURE, SHADER or PROGRAM
+     */
+    public static int getGlObjectCount(int type) {
+        return glObjects.get(type);
+    }
+
+    /**
+     * Returns the number of owners not closed yet.
+     */
+    public static synchronized int getOwnerCount() {
+        return owners.size();
+    }
+
+    static void addGlObjects(int type, int count) {
+        glObjects.addAndGet(type, count);
+    }
+
+    static void removeGlObjects(int type, int count) {
+        glObjects.addAndGet(type, -count);
+    }
+
+    private static int elementSize(Buffer buffer) {
+        if (buffer instanceof ByteBuffer) {
+            return 1;
+        }
+        if (buffer instanceof ShortBuffer) {
+            return 2;
+        }
+        if (buffer instanceof IntBuffer || buffer instanceof FloatBuffer) {
+            return 4;
+        }
+        if (buffer instanceof LongBuffer || buffer instanceof DoubleBuffer) {
+            return 8;
+        }
+        throw new RuntimeException("Buffer type is not supported.");
+    }
+
+    static ByteBuffer malloc(int bytes) {
+        nativeBytes.addAndGet(bytes);
+        return MemoryUtil.memAlloc(bytes);
+    }
+
+    static ByteBuffer calloc(int bytes) {
+        nativeBytes.addAndGet(bytes);
+        return MemoryUtil.memCalloc(bytes);
+    }
+
+    static FloatBuffer mallocFloat(int count) {
+        nativeBytes.addAndGet(count * 4L);
+        return MemoryUtil.memAllocFloat(count);
+    }
+
+    static FloatBuffer reallocFloat(FloatBuffer buffer, int count) {
+        nativeBytes.addAndGet((count - buffer.capacity()) * 4L);
+        return MemoryUtil.memRealloc(buffer, count);
+    }
+
+    /**
+     * Frees a buffer from one of the registry's allocation methods.
+     */
+    static void free(Buffer buffer) {
+        nativeBytes.addAndGet(-(long)buffer.capacity() * elementSize(buffer));
+        MemoryUtil.memFree(buffer);
+    }
+}
@@ -8,6 +8,8 @@ import static org.lwjgl.opengl.GL20C.glAttachShader;
 import static org.lwjgl.opengl.GL20C.glCompileShader;
 import static org.lwjgl.opengl.GL20C.glCreateProgram;
 import static org.lwjgl.opengl.GL20C.glCreateShader;
+import static org.lwjgl.opengl.GL20C.glDeleteProgram;
+import static org.lwjgl.opengl.GL20C.glDeleteShader;
 import static org.lwjgl.opengl.GL20C.glGetProgramInfoLog;
 import static org.lwjgl.opengl.GL20C.glGetProgrami;
 import static org.lwjgl.opengl.GL20C.glGetShaderInfoLog;
@@ -20,6 +22,8 @@ import static org.lwjgl.opengl.GL20C.glValidateProgram;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -27,7 +31,7 @@ import java.nio.file.Paths;
 /**
  * Manages a OpenGL shader. 
  */
-public final class Shader {
+public final class Shader implements AutoCloseable {
     private String vertexString;
     private String fragmentString;
     private int vertexHandle;
@@ -38,11 +42,78 @@ public final class Shader {
      * Seperates and compiles a shader.
      * 
      * @param path file path to a shader file
+     * @param defines names to #define at the top of both stages, to compile 
+     *     variants of the same file
      */
-    public Shader(String path) {
+    public Shader(String path, String... defines) {
+        Path pathTest = Paths.get(path);
+        if (Files.notExists(pathTest)) {
+            throw new RuntimeException("Path does not exist.");
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            parseShader(reader);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        compile(path, defines);
+    }
+
+    /**
+     * Seperates and compiles a shader from an asset pack.
+     * 
+     * @param assetPack pack to load from
+     * @param name name of the shader file in the pack, like shaders/shader.glsl
+     * @param defines names to #define at the top of both stages
+     */
+    public Shader(AssetPack assetPack, String name, String... defines) {
+        String source = StandardCharsets.UTF_8.decode(assetPack.get(name))
+            .toString();
+        try (BufferedReader reader = new BufferedReader(
+            new StringReader(source))) 
+        {
+            parseShader(reader);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        compile(name, defines);
+    }
+
+    /**
+     * Seperates a shader and adds its defines without compiling it, so 
+     * parsing can be measured without OpenGL.
+     * 
+     * @param reader shader file contents
+     * @param defines names to #define at the top of both stages
+     */
+    Shader(BufferedReader reader, String... defines) throws IOException {
+        parseShader(reader);
+        vertexString = define(vertexString, defines);
+        fragmentString = define(fragmentString, defines);
+    }
+
+    /**
+     * Adds #define lines after the #version line, which must come first.
+     */
+    private String define(String source, String[] defines) {
+        if (defines.length == 0) {
+            return source;
+        }
+        int lineEnd = source.indexOf('\n') + 1;
+        StringBuilder builder = new StringBuilder(source.substring(0, 
+            lineEnd));
+        for (String define : defines) {
+            builder.append("#define ").append(define).append('\n');
+        }
+        return builder.append(source.substring(lineEnd)).toString();
+    }
+
+    private void compile(String name, String[] defines) {
+        ShaderCompileEvent event = new ShaderCompileEvent();
+        event.begin();
         program = glCreateProgram();
 
-        parseShader(path);
+        vertexString = define(vertexString, defines);
+        fragmentString = define(fragmentString, defines);
 
         vertexHandle = glCreateShader(GL_VERTEX_SHADER);
         glShaderSource(vertexHandle, vertexString);
@@ -69,59 +140,67 @@ public final class Shader {
             System.exit(1);
         }
         glValidateProgram(program);
+
+        ResourceRegistry.addGlObjects(ResourceRegistry.SHADER, 2);
+        ResourceRegistry.addGlObjects(ResourceRegistry.PROGRAM, 1);
+        ResourceRegistry.register(this, "Shader " + name);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = name;
+            event.defines = String.join(" ", defines);
+            event.commit();
+        }
     }
 
     /** 
      * Seperates the single shader file into multiple strings.
      */
-    private void parseShader(String path) {
-        Path pathTest = Paths.get(path);
-        if (Files.notExists(pathTest)) {
-            throw new RuntimeException("Path does not exist.");
-        }
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
-            String line = reader.readLine();
-            
-            // 0 shared, 1 vertex, 2 fragment.
-            int mode = 0;
-            String shared = "";
-            String vertex = "";
-            String fragment = "";
-            while (line != null) {
-                if (line.length() == 0) {
-                    line = reader.readLine();
-                }
-                if (line.equals("#shared")) {
-                    mode = 0;
-                    line = reader.readLine();
-                }
-                if (line.equals("#vertex")) {
-                    mode = 1;
-                    line = reader.readLine();
-                }
-                if (line.equals("#fragment")) {
-                    mode = 2;
-                    line = reader.readLine();
-                }
-                if (mode == 0) {
-                    shared += line + "\n";
-                }
-                if (mode == 1) {
-                    vertex += line + "\n";
-                }
-                if (mode == 2) {
-                    fragment += line + "\n";
-                }
+    private void parseShader(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        
+        // 0 shared, 1 vertex, 2 fragment.
+        int mode = 0;
+        String shared = "";
+        String vertex = "";
+        String fragment = "";
+        while (line != null) {
+            if (line.length() == 0) {
                 line = reader.readLine();
             }
-            vertexString = shared + vertex;
-            fragmentString = shared + fragment;
-
-            reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (line.equals("#shared")) {
+                mode = 0;
+                line = reader.readLine();
+            }
+            if (line.equals("#vertex")) {
+                mode = 1;
+                line = reader.readLine();
+            }
+            if (line.equals("#fragment")) {
+                mode = 2;
+                line = reader.readLine();
+            }
+            if (mode == 0) {
+                shared += line + "\n";
+            }
+            if (mode == 1) {
+                vertex += line + "\n";
+            }
+            if (mode == 2) {
+                fragment += line + "\n";
+            }
+            line = reader.readLine();
         }
+        vertexString = shared + vertex;
+        fragmentString = shared + fragment;
+    }
+
+    String getVertexSource() {
+        return vertexString;
+    }
+
+    String getFragmentSource() {
+        return fragmentString;
     }
 
     /**
@@ -130,4 +209,21 @@ public final class Shader {
     public void use() {
         glUseProgram(program);
     }
+
+    /**
+     * Deletes the shader's OpenGL objects. Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        if (program == 0) {
+            return;
+        }
+        glDeleteShader(vertexHandle);
+        glDeleteShader(fragmentHandle);
+        glDeleteProgram(program);
+        program = 0;
+        ResourceRegistry.removeGlObjects(ResourceRegistry.SHADER, 2);
+        ResourceRegistry.removeGlObjects(ResourceRegistry.PROGRAM, 1);
+        ResourceRegistry.unregister(this);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for compiling and linking a Shader. Off unless a 
+ * recording enables engine.ShaderCompile.
+ */
+@Name("engine.ShaderCompile")
+@Label("Shader Compile")
+@Category({"BAS-E", "Assets"})
+@Description("A vertex and fragment shader compiled and linked")
+@Enabled(false)
+final class ShaderCompileEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Defines")
+    String defines;
+}
@@ -0,0 +1,26 @@
+package engine;
+
+/**
+ * Game logic run by a SimulationLoop. Called from the loop's thread, so it
+ * must not touch OpenGL.
+ * 
+ * @param <T> snapshot type handed to the render thread
+ */
+public interface Simulation<T> {
+    /**
+     * Advances the game by one tick.
+     * 
+     * @param deltaTime length of a tick in seconds, the same every tick. 
+     *     Step a PhysicsWorld with it so ticks replay exactly.
+     */
+    void step(float deltaTime);
+
+    /**
+     * Copies what the render thread needs to draw into a snapshot. Called
+     * after every step.
+     * 
+     * @param snapshot snapshot to overwrite. Holds an older state, never the
+     *     one being drawn.
+     */
+    void writeSnapshot(T snapshot);
+}
@@ -0,0 +1,177 @@
+package engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps a Simulation at a fixed rate and publishes a snapshot after every
+ * tick, so the render thread draws at the display's rate while the game runs
+ * at its own.
+ * 
+ *     SimulationLoop<State> loop = new SimulationLoop<>(game,
+ *         new TripleBuffer<>(new State(), new State(), new State()), 60.0f);
+ *     loop.start();
+ *     while (!glfwWindowShouldClose(window)) {
+ *         draw(loop.getSnapshot());
+ *     }
+ *     loop.stop();
+ * 
+ * The loop can also run on the calling thread with run() or runTicks(), for
+ * headless servers and benchmarks.
+ * 
+ * @param <T> snapshot type
+ */
+public final class SimulationLoop<T> {
+    // Ticks allowed to run back to back after a stall before the loop gives
+    // up on catching up.
+    private final int MAX_CATCH_UP_TICKS = 5;
+    private Simulation<T> simulation;
+    private TripleBuffer<T> snapshots;
+    private float deltaTime;
+    private long tickNanos;
+    private volatile boolean throttled = true;
+    private volatile boolean running = false;
+    private volatile long tickCount = 0;
+    private volatile RuntimeException failure;
+    private Thread thread;
+
+    /**
+     * Initializes the loop without starting it.
+     * 
+     * @param simulation game logic to step
+     * @param snapshots triple buffer to publish snapshots to
+     * @param tickRate ticks per second. Each step is 1 / tickRate seconds
+     *     long, even when not throttled.
+     */
+    public SimulationLoop(Simulation<T> simulation, TripleBuffer<T> snapshots,
+        float tickRate)
+    {
+        if (tickRate <= 0.0f) {
+            throw new RuntimeException("Tick rate must be positive.");
+        }
+        this.simulation = simulation;
+        this.snapshots = snapshots;
+        deltaTime = 1.0f / tickRate;
+        tickNanos = (long)(1000000000.0 / tickRate);
+    }
+
+    private void loop(long ticks) {
+        long nextTick = System.nanoTime();
+        for (long i = 0; i != ticks && running; i++) {
+            if (throttled) {
+                long now = System.nanoTime();
+                if (now - nextTick > MAX_CATCH_UP_TICKS * tickNanos) {
+                    nextTick = now;
+                }
+                while (now - nextTick < 0) {
+                    LockSupport.parkNanos(nextTick - now);
+                    now = System.nanoTime();
+                }
+                nextTick += tickNanos;
+            }
+            simulation.step(deltaTime);
+            simulation.writeSnapshot(snapshots.getWriteBuffer());
+            snapshots.publish();
+            tickCount++;
+        }
+    }
+
+    /**
+     * Runs the loop on a new thread.
+     */
+    public void start() {
+        if (running) {
+            throw new RuntimeException("Simulation is already running.");
+        }
+        running = true;
+        thread = new Thread(() -> {
+            try {
+                loop(-1);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                running = false;
+            }
+        }, "BAS-E simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the loop on the calling thread until stop() is called.
+     */
+    public void run() {
+        runTicks(-1);
+    }
+
+    /**
+     * Runs a number of ticks on the calling thread, or fewer if stop() is
+     * called.
+     * 
+     * @param ticks ticks to run, or -1 to run until stopped
+     */
+    public void runTicks(long ticks) {
+        if (running) {
+            throw new RuntimeException("Simulation is already running.");
+        }
+        running = true;
+        try {
+            loop(ticks);
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Stops the loop after the current tick and waits for its thread to end.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (failure != null) {
+            throw new RuntimeException("Simulation failed.", failure);
+        }
+    }
+
+    /**
+     * Returns the latest snapshot. Only call from one thread.
+     */
+    public T getSnapshot() {
+        if (failure != null) {
+            throw new RuntimeException("Simulation failed.", failure);
+        }
+        return snapshots.acquire();
+    }
+
+    /**
+     * Sets wether the loop waits between ticks. Unthrottled loops step as
+     * fast as possible with the same tick length.
+     */
+    public void setThrottled(boolean throttled) {
+        this.throttled = throttled;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of ticks run since the loop was made.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Returns the length of a tick in seconds.
+     */
+    public float getDeltaTime() {
+        return deltaTime;
+    }
+}
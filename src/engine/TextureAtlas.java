@@ -7,6 +7,7 @@ import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MAG_FILTER;
 import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MIN_FILTER;
 import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
 import static org.lwjgl.opengl.GL11C.glBindTexture;
+import static org.lwjgl.opengl.GL11C.glDeleteTextures;
 import static org.lwjgl.opengl.GL11C.glGenTextures;
 import static org.lwjgl.opengl.GL11C.glTexImage2D;
 import static org.lwjgl.opengl.GL11C.glTexParameterf;
@@ -20,6 +21,7 @@ import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
@@ -27,7 +29,7 @@ import org.lwjgl.system.MemoryStack;
 /**
  * Creates an OpenGL texture.
  */
-public final class TextureAtlas {
+public final class TextureAtlas implements AutoCloseable {
     private IntBuffer widthBuffer;
     private IntBuffer heightBuffer;
     private int width;
@@ -35,6 +37,9 @@ public final class TextureAtlas {
     private IntBuffer channels;
     private ByteBuffer data;
     private int id;
+    // Normalized u0, v0, u1, v1 per region. Odd regions are flipped copies.
+    private float[] regions = new float[4 * 32];
+    private int regionCount = 0;
 
     /**
      * Creates a new texture using an image.
@@ -46,6 +51,8 @@ public final class TextureAtlas {
         if (Files.notExists(pathTest)) {
             throw new RuntimeException("Path does not exist.");
         }
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
         try (MemoryStack stack = stackPush()) {
             widthBuffer = stack.mallocInt(1);
             heightBuffer = stack.mallocInt(1);
@@ -58,30 +65,107 @@ public final class TextureAtlas {
                 throw new RuntimeException(STBImage.stbi_failure_reason());
             }
 
-            // Creates and binds new OpenGL texture.
-            id = glGenTextures();
+            width = widthBuffer.get();
+            height = heightBuffer.get();
 
-            glActiveTexture(GL_TEXTURE0);
-            // The location must be the same as u_textureAtlas' in the shader.
-            glUniform1i(1, 0);
+            upload(data);
 
-            glBindTexture(GL_TEXTURE_2D, id);
+            STBImage.stbi_image_free(data);
+        }
+        commitLoadEvent(event, path, true);
+    }
 
-            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    /**
+     * Creates a new texture from an image in an asset pack. Images packed 
+     * decoded are passed to OpenGL straight from the mapped pack.
+     * 
+     * @param assetPack pack to load from
+     * @param name name of the image in the pack, like res/atlas.png
+     */
+    public TextureAtlas(AssetPack assetPack, String name) {
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+        ByteBuffer packed = assetPack.get(name);
+        if (assetPack.getType(name) == AssetPack.RGBA) {
+            width = assetPack.getWidth(name);
+            height = assetPack.getHeight(name);
+            upload(packed);
+            commitLoadEvent(event, name, false);
+            return;
+        }
+        try (MemoryStack stack = stackPush()) {
+            widthBuffer = stack.mallocInt(1);
+            heightBuffer = stack.mallocInt(1);
+            channels = stack.mallocInt(1);
 
+            data = STBImage.stbi_load_from_memory(packed, widthBuffer, 
+                heightBuffer, channels, 4);
+            if(data == null) {
+                throw new RuntimeException(STBImage.stbi_failure_reason());
+            }
             width = widthBuffer.get();
             height = heightBuffer.get();
 
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA,
-                GL_UNSIGNED_BYTE, data);
+            upload(data);
 
             STBImage.stbi_image_free(data);
+        }
+        commitLoadEvent(event, name, true);
+    }
 
-            glBindTexture(GL_TEXTURE_2D, 0);
+    private void commitLoadEvent(TextureLoadEvent event, String source, 
+        boolean decoded) 
+    {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.width = width;
+            event.height = height;
+            event.bytes = width * height * 4L;
+            event.decoded = decoded;
+            event.commit();
         }
     }
 
+    /**
+     * Creates the OpenGL texture from RGBA pixels.
+     */
+    private void upload(ByteBuffer pixels) {
+        // Creates and binds new OpenGL texture.
+        id = glGenTextures();
+
+        glActiveTexture(GL_TEXTURE0);
+        // The location must be the same as u_textureAtlas' in the shader.
+        glUniform1i(1, 0);
+
+        glBindTexture(GL_TEXTURE_2D, id);
+
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA,
+            GL_UNSIGNED_BYTE, pixels);
+
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        ResourceRegistry.addGlObjects(ResourceRegistry.TEXTURE, 1);
+        ResourceRegistry.register(this, "TextureAtlas of " + width + "x" 
+            + height);
+    }
+
+    /**
+     * Creates an atlas with no image or OpenGL texture, so regions can be 
+     * added and drawn to a HeadlessRenderer.
+     * 
+     * @param width width in pixels of the image it stands in for
+     * @param height height in pixels of the image it stands in for
+     */
+    public TextureAtlas(int width, int height) {
+        this.width = width;
+        this.height = height;
+        id = 0;
+    }
+
     /**
      * Binds this texture for the current batch.
      */
@@ -89,6 +173,115 @@ public final class TextureAtlas {
         glBindTexture(GL_TEXTURE_2D, id);
     }
 
+    /**
+     * Adds a region of the texture, such as an animation frame, with its 
+     * texture coordinates worked out once instead of on every quad. A 
+     * horizontally flipped copy is added with it.
+     * 
+     * @param xTextureCoord x texture position in pixels
+     * @param yTextureCoord y texture position in pixels
+     * @param textureWidth texture width in pixels
+     * @param textureHeight texture height in pixels
+     * @return region handle to pass to Renderer.addQuad
+     */
+    public int addRegion(float xTextureCoord, float yTextureCoord, 
+        float textureWidth, float textureHeight) 
+    {
+        if ((regionCount + 2) * 4 > regions.length) {
+            regions = Arrays.copyOf(regions, regions.length * 2);
+        }
+        int region = regionCount;
+        regionCount += 2;
+        setRegion(region, xTextureCoord, yTextureCoord, textureWidth, 
+            textureHeight);
+        return region;
+    }
+
+    /**
+     * Adds a region from texture coordinates that are already normalized,
+     * stored exactly as given, such as the ones of a draw recording. A
+     * horizontally flipped copy is added with it.
+     * 
+     * @return region handle to pass to Renderer.addQuad
+     */
+    int addRegion(float[] normalizedRegion) {
+        if ((regionCount + 2) * 4 > regions.length) {
+            regions = Arrays.copyOf(regions, regions.length * 2);
+        }
+        int region = regionCount;
+        regionCount += 2;
+        int offset = region * 4;
+        regions[offset] = normalizedRegion[0];
+        regions[offset + 1] = normalizedRegion[1];
+        regions[offset + 2] = normalizedRegion[2];
+        regions[offset + 3] = normalizedRegion[3];
+        regions[offset + 4] = normalizedRegion[2];
+        regions[offset + 5] = normalizedRegion[1];
+        regions[offset + 6] = normalizedRegion[0];
+        regions[offset + 7] = normalizedRegion[3];
+        return region;
+    }
+
+    /**
+     * Moves a region and its flipped copy.
+     * 
+     * @param region region handle from addRegion, flipped or not
+     * @param xTextureCoord x texture position in pixels
+     * @param yTextureCoord y texture position in pixels
+     * @param textureWidth texture width in pixels
+     * @param textureHeight texture height in pixels
+     */
+    public void setRegion(int region, float xTextureCoord, float yTextureCoord, 
+        float textureWidth, float textureHeight) 
+    {
+        if (region < 0 || region >= regionCount) {
+            throw new RuntimeException("Region does not exist.");
+        }
+        float left = xTextureCoord / width;
+        float top = yTextureCoord / height;
+        float right = (xTextureCoord + textureWidth) / width;
+        float bottom = (yTextureCoord + textureHeight) / height;
+        int offset = (region & ~1) * 4;
+        regions[offset] = left;
+        regions[offset + 1] = top;
+        regions[offset + 2] = right;
+        regions[offset + 3] = bottom;
+        regions[offset + 4] = right;
+        regions[offset + 5] = top;
+        regions[offset + 6] = left;
+        regions[offset + 7] = bottom;
+    }
+
+    /**
+     * Returns the handle of the horizontally flipped copy of a region, or of 
+     * the original if given the flipped copy.
+     */
+    public int getFlippedRegion(int region) {
+        return region ^ 1;
+    }
+
+    /**
+     * Returns normalized u0, v0, u1, v1 for each region handle.
+     */
+    float[] getRegions() {
+        return regions;
+    }
+
+    /**
+     * Deletes the OpenGL texture. Does nothing if already closed or if the 
+     * atlas has no texture.
+     */
+    @Override
+    public void close() {
+        if (id == 0) {
+            return;
+        }
+        glDeleteTextures(id);
+        id = 0;
+        ResourceRegistry.removeGlObjects(ResourceRegistry.TEXTURE, 1);
+        ResourceRegistry.unregister(this);
+    }
+
     public int getId() {
         return id;
     }
@@ -0,0 +1,38 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for decoding and uploading a TextureAtlas image. Off 
+ * unless a recording enables engine.TextureLoad.
+ */
+@Name("engine.TextureLoad")
+@Label("Texture Load")
+@Category({"BAS-E", "Assets"})
+@Description("An image decoded, if needed, and uploaded as a texture")
+@Enabled(false)
+final class TextureLoadEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Decoded")
+    @Description("Wether the image had to be decoded, rather than being "
+        + "packed decoded")
+    boolean decoded;
+}
@@ -0,0 +1,70 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes state from one thread to another without locks or allocation. The
+ * writer fills one buffer while the reader holds another, and the third is
+ * swapped between them, so neither ever waits on the other.
+ * 
+ * The reader always gets the latest published buffer. Buffers published in
+ * between are skipped.
+ * 
+ * @param <T> buffer type, such as a snapshot of what to draw
+ */
+public final class TripleBuffer<T> {
+    // The low two bits of the state are the index of the middle buffer.
+    private final int DIRTY = 4;
+    private final int INDEX_MASK = 3;
+    private Object[] buffers;
+    private AtomicInteger state = new AtomicInteger(1);
+    private int writeIndex = 0;
+    private int readIndex = 2;
+
+    /**
+     * Initializes the triple buffer. The three buffers must be different
+     * objects.
+     */
+    public TripleBuffer(T first, T second, T third) {
+        if (first == second || second == third || first == third) {
+            throw new RuntimeException("Buffers must be different objects.");
+        }
+        buffers = new Object[] {first, second, third};
+    }
+
+    /**
+     * Returns the buffer to fill. Only call from the writing thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T)buffers[writeIndex];
+    }
+
+    /**
+     * Hands the filled write buffer to the reader and returns the next one to
+     * fill. Only call from the writing thread.
+     */
+    public T publish() {
+        writeIndex = state.getAndSet(writeIndex | DIRTY) & INDEX_MASK;
+        return getWriteBuffer();
+    }
+
+    /**
+     * Returns the latest published buffer. It stays untouched by the writer
+     * until the next acquire. Only call from the reading thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((state.get() & DIRTY) != 0) {
+            readIndex = state.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return (T)buffers[readIndex];
+    }
+
+    /**
+     * Returns wether something was published since the last acquire.
+     */
+    public boolean hasUpdate() {
+        return (state.get() & DIRTY) != 0;
+    }
+}
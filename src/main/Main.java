@@ -2,6 +2,8 @@ package main;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
 import static org.lwjgl.glfw.GLFW.GLFW_RESIZABLE;
 import static org.lwjgl.glfw.GLFW.GLFW_TRUE;
 import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
@@ -12,9 +14,9 @@ import static org.lwjgl.glfw.GLFW.glfwInit;
 import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
 import static org.lwjgl.glfw.GLFW.glfwPollEvents;
 import static org.lwjgl.glfw.GLFW.glfwSetFramebufferSizeCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
 import static org.lwjgl.glfw.GLFW.glfwShowWindow;
 import static org.lwjgl.glfw.GLFW.glfwSwapBuffers;
-import static org.lwjgl.glfw.GLFW.glfwSwapInterval;
 import static org.lwjgl.glfw.GLFW.glfwTerminate;
 import static org.lwjgl.glfw.GLFW.glfwWindowHint;
 import static org.lwjgl.glfw.GLFW.glfwWindowShouldClose;
@@ -30,26 +32,91 @@ import static org.lwjgl.opengl.GL11C.glEnable;
 import static org.lwjgl.opengl.GL11C.glViewport;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import org.lwjgl.glfw.GLFWFramebufferSizeCallback;
 import org.lwjgl.opengl.GL;
 
 import engine.Animation;
-import engine.GameUtils;
+import engine.AssetPack;
+import engine.AnimationSystem;
+import engine.FrameArena;
+import engine.FramePacer;
+import engine.FrameTimer;
+import engine.Input;
 import engine.Renderer;
+import engine.ResourceRegistry;
+import engine.Shader;
+import engine.Simulation;
+import engine.SimulationLoop;
 import engine.TextureAtlas;
+import engine.TripleBuffer;
+
+public final class Main implements Simulation<Main.ExampleSnapshot> {
+    /**
+     * What the render thread needs from a simulation tick.
+     */
+    static final class ExampleSnapshot {
+        int animationFrame;
+    }
 
-public final class Main {
     private long window;
     private Renderer renderer;
     private TextureAtlas textureAtlas;
+    private AnimationSystem animationSystem;
     private Animation exampleAnimation;
+    private FrameTimer frameTimer = new FrameTimer();
+    // V-sync paces frames, so there is no limit. Give a target, like 144.0f, 
+    // if v-sync is turned off.
+    private FramePacer framePacer = new FramePacer(0.0f);
+    // Scratch memory for the current frame, reset at the start of each.
+    private FrameArena frameArena;
+    private Input input;
+    private SimulationLoop<ExampleSnapshot> simulationLoop;
 
-    Main() {
+    Main(boolean headless, long ticks) {
+        if (headless) {
+            runHeadless(ticks);
+            return;
+        }
         setup();
         gameLoop();
         cleanup();
     }
 
+    /**
+     * Runs only the simulation, with no window or OpenGL.
+     * 
+     * @param ticks ticks to run as fast as possible, or -1 to run at 60 ticks 
+     *     per second until the process is stopped
+     */
+    private void runHeadless(long ticks) {
+        setupSimulation();
+        if (ticks < 0) {
+            simulationLoop.run();
+            return;
+        }
+        simulationLoop.setThrottled(false);
+        long start = System.nanoTime();
+        simulationLoop.runTicks(ticks);
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+        System.out.printf("%d ticks in %.3f s (%.0f ticks per second)%n", 
+            ticks, seconds, ticks / seconds);
+    }
+
+    private void setupSimulation() {
+        animationSystem = new AnimationSystem(16);
+        exampleAnimation = new Animation(animationSystem, new float[] {16.0f, 
+            128.0f, 24.0f, 128.0f}, 8.0f, 8.0f, 2.0f);
+
+        // Runs game logic at 60 ticks per second.
+        simulationLoop = new SimulationLoop<>(this, new TripleBuffer<>(
+            new ExampleSnapshot(), new ExampleSnapshot(), 
+            new ExampleSnapshot()), 60.0f);
+    }
+
     private void setup() {
         if (!glfwInit()) {
             throw new RuntimeException("Unable to initialize GLFW");
@@ -68,8 +135,8 @@ public final class Main {
         // Specifies which window we're working with.                                                                 
         glfwMakeContextCurrent(window);
 
-        // Enables v-sync.
-        glfwSwapInterval(1);
+        // Enables v-sync, adaptive if supported.
+        FramePacer.enableVsync(true);
 
         glfwShowWindow(window);
 
@@ -81,8 +148,25 @@ public final class Main {
         glEnable(GL_BLEND);
         glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
 
-        renderer = new Renderer(GameUtils.getWindowWidth(window),
-            GameUtils.getWindowHeight(window), "./shaders/shader.glsl");
+        input = new Input(window, 256);
+
+        // Loads from the asset pack if one was built, or else loose files.
+        Path packPath = Paths.get("./assets.pack");
+        AssetPack assetPack = Files.exists(packPath) ? new AssetPack(packPath) 
+            : null;
+
+        if (assetPack != null) {
+            renderer = new Renderer(input.getWindowWidth(), 
+                input.getWindowHeight(), 
+                new Shader(assetPack, "shaders/shader.glsl"), 
+                new Shader(assetPack, "shaders/shader.glsl", "ALPHA_TEST"));
+        }
+        else {
+            renderer = new Renderer(input.getWindowWidth(), 
+                input.getWindowHeight(), "./shaders/shader.glsl");
+        }
+        frameArena = new FrameArena(64 * 1024);
+        renderer.setFrameArena(frameArena);
 
         // Updates viewport and renderer when GLFW window size changes.
         glfwSetFramebufferSizeCallback(window, new GLFWFramebufferSizeCallback() 
@@ -94,35 +178,85 @@ public final class Main {
             }
         });
 
-        textureAtlas = new TextureAtlas("./res/atlas.png");
+        textureAtlas = assetPack != null 
+            ? new TextureAtlas(assetPack, "res/atlas.png") 
+            : new TextureAtlas("./res/atlas.png");
         textureAtlas.bind();
-        exampleAnimation = new Animation(new float[] {16.0f, 128.0f, 24.0f, 
-            128.0f}, 8.0f, 8.0f, 2.0f);
+        setupSimulation();
+        exampleAnimation.setAtlas(textureAtlas);
+        // Runs the simulation on its own thread.
+        simulationLoop.start();
+    }
+
+    @Override
+    public void step(float deltaTime) {
+        animationSystem.update(deltaTime);
+    }
+
+    @Override
+    public void writeSnapshot(ExampleSnapshot snapshot) {
+        snapshot.animationFrame = exampleAnimation.getFrame();
     }
 
     private void gameLoop() {
         while (!glfwWindowShouldClose(window)) {
+            // Input is polled right before drawing so it is as fresh as 
+            // possible.
+            framePacer.waitForNextFrame();
+            frameTimer.beginFrame();
+            frameArena.reset();
+
+            glfwPollEvents();
+            while (input.next()) {
+                if (input.getType() == Input.KEY
+                    && input.getCode() == GLFW_KEY_ESCAPE
+                    && input.getAction() == GLFW_PRESS)
+                {
+                    glfwSetWindowShouldClose(window, true);
+                }
+            }
+
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
             glClearColor(0.529f, 0.808f, 0.922f, 1.0f);
-            
-            exampleAnimation.drawFrame(renderer, 0.0f, 0.0f, 0.0f, 128.0f, 
-                128.0f, 1.0f, 1.0f, 1.0f, 1.0f, textureAtlas);
+
+            ExampleSnapshot snapshot = simulationLoop.getSnapshot();
+
+            frameTimer.begin(FrameTimer.RENDER);
+            exampleAnimation.drawFrame(renderer, snapshot.animationFrame, 0.0f, 
+                0.0f, 0.0f, 128.0f, 128.0f, 1.0f, 1.0f, 1.0f, 1.0f, 
+                textureAtlas);
+            frameTimer.end(FrameTimer.RENDER);
+
+            frameTimer.begin(FrameTimer.FLUSH);
             renderer.flush();
+            frameTimer.end(FrameTimer.FLUSH);
 
+            frameTimer.begin(FrameTimer.SWAP);
             glfwSwapBuffers(window);
+            frameTimer.end(FrameTimer.SWAP);
 
-            glfwPollEvents();
+            frameTimer.reportEvery(10.0f, System.out);
         }
     }
 
     private void cleanup() {
-        renderer.freeBufferMemory();
+        simulationLoop.stop();
+        // Frees the renderer, shaders and textures, newest first.
+        ResourceRegistry.closeAll();
+        ResourceRegistry.reportLeaks(System.err);
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
         glfwTerminate();
     }
     
+    /**
+     * Pass --headless to run without a window, optionally followed by a 
+     * number of ticks to run as fast as possible.
+     */
     public static void main(String[] args) {
-        new Main();
+        boolean headless = args.length > 0 && args[0].equals("--headless");
+        long ticks = headless && args.length > 1 ? Long.parseLong(args[1]) 
+            : -1;
+        new Main(headless, ticks);
     }
 }
\ No newline at end of file
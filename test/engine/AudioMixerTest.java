@@ -0,0 +1,114 @@
+package engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URISyntaxException;
+import java.nio.ShortBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Plays sounds and music on the default device. Run with
+ * ALSOFT_DRIVERS=null, as Maven does, to use OpenAL Soft's "No Output"
+ * device, which plays in real time without a sound card.
+ */
+@Timeout(value = 10, unit = TimeUnit.SECONDS)
+public class AudioMixerTest {
+    private final int SAMPLE_RATE = 8000;
+    // Sample frames in res/tone.ogg, half a second of a 440 Hz tone.
+    private final int TONE_FRAMES = 4000;
+    private final long WAIT_MILLIS = 5000;
+
+    private String getTonePath() throws URISyntaxException {
+        return Paths.get(AudioMixerTest.class.getResource("/res/tone.ogg")
+            .toURI()).toString();
+    }
+
+    /**
+     * Waits until a condition holds, or fails after WAIT_MILLIS.
+     */
+    private void waitFor(BooleanSupplier condition, String message)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void playsGeneratedSound() throws InterruptedException {
+        // A tenth of a second of a 440 Hz sine.
+        ShortBuffer samples = MemoryUtil.memAllocShort(SAMPLE_RATE / 10);
+        for (int i = 0; i < samples.capacity(); i++) {
+            samples.put(i, (short)(Math.sin(2.0 * Math.PI * 440.0 * i
+                / SAMPLE_RATE) * 8000.0));
+        }
+        try (AudioMixer mixer = new AudioMixer(null, 2)) {
+            int sound = mixer.loadSound(samples, 1, SAMPLE_RATE);
+            MemoryUtil.memFree(samples);
+            int voice = mixer.play(sound, 1.0f, 1.0f, false);
+            assertTrue(mixer.isPlaying(voice));
+            waitFor(() -> !mixer.isPlaying(voice), "Sound did not end.");
+
+            int looping = mixer.play(sound, 1.0f, 1.0f, true);
+            Thread.sleep(300);
+            assertTrue(mixer.isPlaying(looping));
+            mixer.stop(looping);
+            assertFalse(mixer.isPlaying(looping));
+        }
+    }
+
+    /**
+     * A looping track keeps being decoded after its queued buffers have
+     * played, which only happens if they are refilled and the track starts
+     * over at the end.
+     */
+    @Test
+    public void streamsLoopingMusic() throws Exception {
+        try (AudioMixer mixer = new AudioMixer(null, 1)) {
+            mixer.playMusic(getTonePath(), true);
+            waitFor(() -> mixer.getMusicFramesDecoded() > TONE_FRAMES * 5,
+                "Music was not refilled.");
+            mixer.stopMusic();
+        }
+    }
+
+    @Test
+    public void musicEndsWithoutLooping() throws Exception {
+        try (AudioMixer mixer = new AudioMixer(null, 1)) {
+            mixer.playMusic(getTonePath(), false);
+            waitFor(() -> mixer.getMusicFramesDecoded() > 0,
+                "Music did not start.");
+            // Longer than the track.
+            Thread.sleep(1000);
+            assertEquals(TONE_FRAMES, mixer.getMusicFramesDecoded());
+        }
+    }
+
+    /**
+     * Closing while music streams stops the music thread and frees
+     * everything, and closing again does nothing.
+     */
+    @Test
+    public void closesWhileStreaming() throws Exception {
+        int ownerCount = ResourceRegistry.getOwnerCount();
+        AudioMixer mixer = new AudioMixer(null, 4);
+        assertEquals(ownerCount + 1, ResourceRegistry.getOwnerCount());
+        mixer.playMusic(getTonePath(), true);
+        waitFor(() -> mixer.getMusicFramesDecoded() > 0,
+            "Music did not start.");
+        mixer.close();
+        assertEquals(ownerCount, ResourceRegistry.getOwnerCount());
+        mixer.close();
+        assertEquals(ownerCount, ResourceRegistry.getOwnerCount());
+    }
+}
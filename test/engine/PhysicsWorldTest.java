@@ -0,0 +1,102 @@
+package engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks PhysicsWorld handles and rolling a world back with PhysicsSnapshot.
+ */
+public class PhysicsWorldTest {
+    private final float DELTA_TIME = 1.0f / 60.0f;
+
+    /**
+     * Spawning and despawning one entity at a time reuses the same slot,
+     * which must never hand an old handle a live entity again.
+     */
+    @Test
+    public void staleHandleStaysDead() {
+        PhysicsWorld world = new PhysicsWorld(4);
+        int first = world.create(0.0f, 0.0f, 4.0f, 4.0f, true, true);
+        world.destroy(first);
+        for (int i = 0; i < 5000; i++) {
+            int handle = world.create(0.0f, 0.0f, 4.0f, 4.0f, true, true);
+            assertFalse(world.isAlive(first));
+            assertTrue(world.isAlive(handle));
+            world.destroy(handle);
+        }
+        assertFalse(world.isAlive(first));
+    }
+
+    private PhysicsWorld createWorld() {
+        PhysicsWorld world = new PhysicsWorld(16);
+        world.create(0.0f, 200.0f, 400.0f, 16.0f, false, true);
+        for (int i = 0; i < 8; i++) {
+            world.create(i * 40.0f, i * 10.0f, 16.0f, 16.0f, true, true);
+        }
+        return world;
+    }
+
+    /**
+     * Steps the world and returns its contact events, one string per event.
+     */
+    private List<String> step(PhysicsWorld world, int ticks) {
+        List<String> events = new ArrayList<>();
+        ContactEvents contactEvents = world.getContactEvents();
+        for (int tick = 0; tick < ticks; tick++) {
+            world.step(DELTA_TIME);
+            while (contactEvents.next()) {
+                events.add(tick + " " + contactEvents.getType() + " "
+                    + contactEvents.getHandleA() + " "
+                    + contactEvents.getHandleB());
+            }
+        }
+        return events;
+    }
+
+    private byte[] toBytes(PhysicsSnapshot snapshot) {
+        ByteBuffer buffer = snapshot.getBuffer().duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Creating and destroying entities after a save and then restoring it
+     * replays exactly as if they had never happened, contacts included.
+     */
+    @Test
+    public void restoreUndoesCreateAndDestroy() {
+        PhysicsWorld world = createWorld();
+        // Long enough for every box to land, so pairs are touching.
+        step(world, 60);
+        PhysicsSnapshot saved = new PhysicsSnapshot(1);
+        saved.save(world);
+        List<String> expectedEvents = step(world, 60);
+        PhysicsSnapshot expected = new PhysicsSnapshot(1);
+        expected.save(world);
+
+        saved.restore(world);
+        PhysicsEntity[] entities = world.getEntities();
+        int destroyed = entities[3].getID();
+        world.destroy(destroyed);
+        world.destroy(entities[1].getID());
+        int created = world.create(100.0f, 0.0f, 32.0f, 8.0f, false, true);
+        step(world, 10);
+
+        saved.restore(world);
+        assertTrue(world.isAlive(destroyed));
+        assertFalse(world.isAlive(created));
+        assertEquals(expectedEvents, step(world, 60));
+        PhysicsSnapshot actual = new PhysicsSnapshot(1);
+        actual.save(world);
+        assertArrayEquals(toBytes(expected), toBytes(actual));
+    }
+}
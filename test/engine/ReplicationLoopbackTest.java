@@ -0,0 +1,145 @@
+package engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Runs a ReplicationServer and its clients over loopback.
+ */
+@Timeout(value = 10, unit = TimeUnit.SECONDS)
+public class ReplicationLoopbackTest {
+    private final int ENTITY_COUNT = 50;
+    private final int TICKS = 300;
+    private final float DELTA_TIME = 1.0f / 60.0f;
+
+    private ReplicationServer createServer() {
+        return new ReplicationServer(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0), ENTITY_COUNT, 4, 100000.0f,
+            1200);
+    }
+
+    /**
+     * Every snapshot the client ends up with matches the world as it was
+     * when that snapshot was sent, to within the wire's precision.
+     */
+    @Test
+    public void clientMatchesServer() {
+        PhysicsWorld world = new PhysicsWorld(ENTITY_COUNT);
+        world.create(0.0f, 400.0f, 2000.0f, 16.0f, false, true);
+        for (int i = 1; i < ENTITY_COUNT; i++) {
+            world.create(i * 37 % 1000, i * 53 % 300, 16.0f, 16.0f, true,
+                true);
+        }
+        // Positions sent with each sequence, by slot.
+        float[][] sentXs = new float[ReplicationSnapshot.HISTORY][];
+        float[][] sentYs = new float[ReplicationSnapshot.HISTORY][];
+        int checked = 0;
+
+        try (ReplicationServer server = createServer();
+            ReplicationClient client = new ReplicationClient(
+            server.getLocalAddress(), ENTITY_COUNT, 1200))
+        {
+            for (int tick = 0; tick < TICKS; tick++) {
+                world.step(DELTA_TIME);
+                world.getContactEvents().clear();
+                PhysicsEntity[] entities = world.getEntities();
+                server.beginSnapshot();
+                float[] xs = new float[world.getCount()];
+                float[] ys = new float[world.getCount()];
+                for (int i = 0; i < world.getCount(); i++) {
+                    server.addEntity(entities[i], 0);
+                    xs[entities[i].getID()] = entities[i].getPosition().getX();
+                    ys[entities[i].getID()] = entities[i].getPosition().getY();
+                }
+                server.sendSnapshot();
+                int slot = server.getSequence() % ReplicationSnapshot.HISTORY;
+                sentXs[slot] = xs;
+                sentYs[slot] = ys;
+
+                client.update();
+                int sequence = client.getSequence();
+                if (sequence < 0 || server.getSequence() - sequence
+                    >= ReplicationSnapshot.HISTORY)
+                {
+                    continue;
+                }
+                slot = sequence % ReplicationSnapshot.HISTORY;
+                assertEquals(world.getCount(), client.getCount());
+                for (int i = 0; i < client.getCount(); i++) {
+                    int id = client.getID(i);
+                    assertEquals(sentXs[slot][id], client.getX(i), 0.0625f);
+                    assertEquals(sentYs[slot][id], client.getY(i), 0.0625f);
+                    checked++;
+                }
+            }
+            assertEquals(1, server.getClientCount());
+        }
+        assertTrue(checked > ENTITY_COUNT * TICKS / 2);
+    }
+
+    /**
+     * An ack of the snapshot the server is about to send cannot be a real
+     * one, so it must not become the baseline.
+     */
+    @Test
+    public void ackOfUnsentSnapshotIsIgnored() throws IOException {
+        ByteBuffer packet = ByteBuffer.allocate(1200);
+        try (ReplicationServer server = createServer();
+            DatagramChannel channel = DatagramChannel.open())
+        {
+            channel.connect(server.getLocalAddress());
+            sendAck(channel, -1);
+            int sequence = sendAndReceive(server, channel, packet);
+            assertEquals(-1, packet.getInt(5));
+
+            sendAck(channel, sequence + 1);
+            sequence = sendAndReceive(server, channel, packet);
+            assertEquals(-1, packet.getInt(5));
+
+            sendAck(channel, sequence);
+            int next = sendAndReceive(server, channel, packet);
+            assertEquals(sequence, packet.getInt(5));
+            assertEquals(sequence + 1, next);
+        }
+    }
+
+    private void sendAck(DatagramChannel channel, int sequence)
+        throws IOException
+    {
+        ByteBuffer ack = ByteBuffer.allocate(ReplicationSnapshot.ACK_BYTES);
+        ack.put(ReplicationSnapshot.ACK);
+        ack.putInt(sequence);
+        ack.putFloat(0.0f);
+        ack.putFloat(0.0f);
+        ack.flip();
+        channel.write(ack);
+    }
+
+    /**
+     * Sends a snapshot of one entity and reads the packet it became.
+     * 
+     * @return the packet's sequence
+     */
+    private int sendAndReceive(ReplicationServer server,
+        DatagramChannel channel, ByteBuffer packet) throws IOException
+    {
+        server.beginSnapshot();
+        server.addEntity(1, 0.0f, 0.0f, 16.0f, 16.0f, 0.0f, 0.0f, 0, false);
+        server.sendSnapshot();
+        packet.clear();
+        channel.read(packet);
+        packet.flip();
+        assertEquals(ReplicationSnapshot.SNAPSHOT, packet.get(0));
+        return packet.getInt(1);
+    }
+}